@@ -0,0 +1,1035 @@
+package linearAlgebra;
+
+import java.util.Arrays;
+
+/**
+ * Low level kernels operating directly on the row-major arrays backing Matrix
+ * and Vector objects. Every method takes an array, the offset of its first entry
+ * and, for matrices, the row stride, so that the same kernel can be used on whole
+ * matrices or on sub-blocks of them. None of the methods allocate. Most kernels also
+ * have a single precision overload for the arrays backing FloatMatrix and FloatVector.
+ * @author sbush
+ *
+ */
+public final class Blas {
+
+	//Block sizes used by gemm(). A KC x NC panel of B (256 KB) is reused for every
+	//MC rows of A, and each MC x KC block of A (128 KB) stays in cache while the
+	//panel is swept.
+	private static final int MC = 64;
+	private static final int KC = 256;
+	private static final int NC = 128;
+	
+	private static final BlasKernels KERNELS = selectKernels();
+	
+	private Blas() {}
+	
+	/**
+	 * Chooses the SIMD kernels if the jdk.incubator.vector module has been added to
+	 * the JVM, and the scalar kernels otherwise. VectorizedKernels is loaded by name so
+	 * that this class does not depend on the incubator module being present.
+	 * @return kernels
+	 */
+	private static BlasKernels selectKernels() {
+		
+		if(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			
+			try {
+				return (BlasKernels) Class.forName("linearAlgebra.VectorizedKernels")
+						.getDeclaredConstructor()
+						.newInstance();
+			} catch(ReflectiveOperationException | LinkageError e) {
+				//Fall through to the scalar kernels
+			}
+			
+		}
+		
+		return new ScalarKernels();
+		
+	}
+	
+	/**
+	 * Returns a short description of the kernels selected for this JVM.
+	 * @return kernel description
+	 */
+	public static String kernels() {
+		return KERNELS.toString();
+	}
+	
+	/**
+	 * Computes C = alpha * A * B + beta * C, where A is an m x k matrix, B is a k x n
+	 * matrix and C is an m x n matrix. The computation is split into cache sized blocks,
+	 * and each block is computed four rows and four columns at a time so that sixteen
+	 * partial sums are kept in registers across the inner loop.
+	 * @param m
+	 * @param n
+	 * @param k
+	 * @param alpha
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param b
+	 * @param bOff
+	 * @param ldb
+	 * @param beta
+	 * @param c
+	 * @param cOff
+	 * @param ldc
+	 */
+	public static void gemm(int m, int n, int k, double alpha,
+			double[] a, int aOff, int lda,
+			double[] b, int bOff, int ldb,
+			double beta, double[] c, int cOff, int ldc) {
+		
+		if(beta != 1) {
+			for(int i = 0; i < m; i++) {
+				int row = cOff + i * ldc;
+				if(beta == 0) for(int j = 0; j < n; j++) c[row + j] = 0;
+				else for(int j = 0; j < n; j++) c[row + j] *= beta;
+			}
+		}
+		
+		if(alpha == 0) return;
+		
+		for(int p0 = 0; p0 < k; p0 += KC) {
+			
+			int kc = Math.min(KC, k - p0);
+			
+			for(int i0 = 0; i0 < m; i0 += MC) {
+				
+				int mc = Math.min(MC, m - i0);
+				
+				for(int j0 = 0; j0 < n; j0 += NC) {
+					
+					int nc = Math.min(NC, n - j0);
+					
+					gemmBlock(mc, nc, kc, alpha,
+							a, aOff + i0 * lda + p0, lda,
+							b, bOff + p0 * ldb + j0, ldb,
+							c, cOff + i0 * ldc + j0, ldc);
+					
+				}
+				
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Computes C = alpha * A * B^T + beta * C, where A is an m x k matrix, B is an n x k
+	 * matrix and C is an m x n matrix. Every entry of C is the dot product of a row of A
+	 * with a row of B, so both operands are read along their rows. The rows of B are
+	 * processed in blocks that stay in cache while every row of A is swept past them.
+	 * @param m
+	 * @param n
+	 * @param k
+	 * @param alpha
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param b
+	 * @param bOff
+	 * @param ldb
+	 * @param beta
+	 * @param c
+	 * @param cOff
+	 * @param ldc
+	 */
+	public static void gemmNT(int m, int n, int k, double alpha,
+			double[] a, int aOff, int lda,
+			double[] b, int bOff, int ldb,
+			double beta, double[] c, int cOff, int ldc) {
+		
+		int block = Math.max(1, (KC * NC) / Math.max(1, k));
+		
+		for(int j0 = 0; j0 < n; j0 += block) {
+			
+			int j1 = Math.min(n, j0 + block);
+			
+			for(int i = 0; i < m; i++) {
+				
+				int aRow = aOff + i * lda;
+				int cRow = cOff + i * ldc;
+				
+				for(int j = j0; j < j1; j++) {
+					double dot = alpha * KERNELS.dot(k, a, aRow, b, bOff + j * ldb);
+					c[cRow + j] = (beta == 0) ? dot : dot + beta * c[cRow + j];
+				}
+				
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Computes C = alpha * A^T * B + beta * C, where A is a k x m matrix, B is a k x n
+	 * matrix and C is an m x n matrix. Each row of B is added into the rows of C, scaled
+	 * by the matching column of A, so no transposed copy of A is made. The rows of C are
+	 * processed in blocks that stay in cache while every row of B is streamed through.
+	 * @param m
+	 * @param n
+	 * @param k
+	 * @param alpha
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param b
+	 * @param bOff
+	 * @param ldb
+	 * @param beta
+	 * @param c
+	 * @param cOff
+	 * @param ldc
+	 */
+	public static void gemmTN(int m, int n, int k, double alpha,
+			double[] a, int aOff, int lda,
+			double[] b, int bOff, int ldb,
+			double beta, double[] c, int cOff, int ldc) {
+		
+		if(beta != 1) {
+			for(int i = 0; i < m; i++) {
+				int row = cOff + i * ldc;
+				if(beta == 0) for(int j = 0; j < n; j++) c[row + j] = 0;
+				else KERNELS.scal(n, beta, c, row);
+			}
+		}
+		
+		if(alpha == 0) return;
+		
+		int block = Math.max(1, (KC * NC) / Math.max(1, n));
+		
+		for(int i0 = 0; i0 < m; i0 += block) {
+			
+			int i1 = Math.min(m, i0 + block);
+			
+			for(int p = 0; p < k; p++) {
+				
+				int aRow = aOff + p * lda;
+				int bRow = bOff + p * ldb;
+				
+				for(int i = i0; i < i1; i++) {
+					double x = alpha * a[aRow + i];
+					if(x != 0) KERNELS.axpy(n, x, b, bRow, c, cOff + i * ldc);
+				}
+				
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Adds alpha * A * B to C for a single cache block.
+	 */
+	private static void gemmBlock(int m, int n, int k, double alpha,
+			double[] a, int aOff, int lda,
+			double[] b, int bOff, int ldb,
+			double[] c, int cOff, int ldc) {
+		
+		int i = 0;
+		
+		for(; i + 4 <= m; i += 4) {
+			
+			int a0 = aOff + i * lda, a1 = a0 + lda, a2 = a1 + lda, a3 = a2 + lda;
+			int c0 = cOff + i * ldc, c1 = c0 + ldc, c2 = c1 + ldc, c3 = c2 + ldc;
+			
+			int j = 0;
+			
+			for(; j + 4 <= n; j += 4) {
+				
+				double s00 = 0, s01 = 0, s02 = 0, s03 = 0;
+				double s10 = 0, s11 = 0, s12 = 0, s13 = 0;
+				double s20 = 0, s21 = 0, s22 = 0, s23 = 0;
+				double s30 = 0, s31 = 0, s32 = 0, s33 = 0;
+				
+				for(int p = 0, bRow = bOff + j; p < k; p++, bRow += ldb) {
+					
+					double b0 = b[bRow], b1 = b[bRow + 1], b2 = b[bRow + 2], b3 = b[bRow + 3];
+					
+					double x = a[a0 + p];
+					s00 += x * b0; s01 += x * b1; s02 += x * b2; s03 += x * b3;
+					x = a[a1 + p];
+					s10 += x * b0; s11 += x * b1; s12 += x * b2; s13 += x * b3;
+					x = a[a2 + p];
+					s20 += x * b0; s21 += x * b1; s22 += x * b2; s23 += x * b3;
+					x = a[a3 + p];
+					s30 += x * b0; s31 += x * b1; s32 += x * b2; s33 += x * b3;
+					
+				}
+				
+				c[c0 + j] += alpha * s00; c[c0 + j + 1] += alpha * s01; c[c0 + j + 2] += alpha * s02; c[c0 + j + 3] += alpha * s03;
+				c[c1 + j] += alpha * s10; c[c1 + j + 1] += alpha * s11; c[c1 + j + 2] += alpha * s12; c[c1 + j + 3] += alpha * s13;
+				c[c2 + j] += alpha * s20; c[c2 + j + 1] += alpha * s21; c[c2 + j + 2] += alpha * s22; c[c2 + j + 3] += alpha * s23;
+				c[c3 + j] += alpha * s30; c[c3 + j + 1] += alpha * s31; c[c3 + j + 2] += alpha * s32; c[c3 + j + 3] += alpha * s33;
+				
+			}
+			
+			//Leftover columns
+			for(; j < n; j++) {
+				
+				double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+				
+				for(int p = 0, bIndex = bOff + j; p < k; p++, bIndex += ldb) {
+					double y = b[bIndex];
+					s0 += a[a0 + p] * y;
+					s1 += a[a1 + p] * y;
+					s2 += a[a2 + p] * y;
+					s3 += a[a3 + p] * y;
+				}
+				
+				c[c0 + j] += alpha * s0;
+				c[c1 + j] += alpha * s1;
+				c[c2 + j] += alpha * s2;
+				c[c3 + j] += alpha * s3;
+				
+			}
+			
+		}
+		
+		//Leftover rows
+		for(; i < m; i++) {
+			
+			int aRow = aOff + i * lda;
+			int cRow = cOff + i * ldc;
+			
+			for(int p = 0, bRow = bOff; p < k; p++, bRow += ldb) {
+				double x = alpha * a[aRow + p];
+				for(int j = 0; j < n; j++) c[cRow + j] += x * b[bRow + j];
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Returns the dot product of the n entries of x and y starting at the given offsets.
+	 * @param n
+	 * @param x
+	 * @param xOff
+	 * @param y
+	 * @param yOff
+	 * @return dot product
+	 */
+	public static double dot(int n, double[] x, int xOff, double[] y, int yOff) {
+		
+		return KERNELS.dot(n, x, xOff, y, yOff);
+		
+	}
+	
+	/**
+	 * Computes y = alpha * x + y over n entries.
+	 * @param n
+	 * @param alpha
+	 * @param x
+	 * @param xOff
+	 * @param y
+	 * @param yOff
+	 */
+	public static void axpy(int n, double alpha, double[] x, int xOff, double[] y, int yOff) {
+		
+		KERNELS.axpy(n, alpha, x, xOff, y, yOff);
+		
+	}
+	
+	/**
+	 * Computes x = alpha * x over n entries.
+	 * @param n
+	 * @param alpha
+	 * @param x
+	 * @param xOff
+	 */
+	public static void scal(int n, double alpha, double[] x, int xOff) {
+		
+		KERNELS.scal(n, alpha, x, xOff);
+		
+	}
+	
+	/**
+	 * Computes y = alpha * A * x + beta * y, where A is an m x n matrix.
+	 * @param m
+	 * @param n
+	 * @param alpha
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param x
+	 * @param xOff
+	 * @param beta
+	 * @param y
+	 * @param yOff
+	 */
+	public static void gemv(int m, int n, double alpha,
+			double[] a, int aOff, int lda,
+			double[] x, int xOff,
+			double beta, double[] y, int yOff) {
+		
+		for(int r = 0; r < m; r++) {
+			
+			double dot = alpha * dot(n, a, aOff + r * lda, x, xOff);
+			
+			y[yOff + r] = (beta == 0) ? dot : dot + beta * y[yOff + r];
+			
+		}
+		
+	}
+	
+	/**
+	 * Computes y = alpha * A^T * x + beta * y, where A is an m x n matrix, x has m
+	 * entries and y has n entries. A is read one row at a time, so no transposed
+	 * copy of it is needed.
+	 * @param m
+	 * @param n
+	 * @param alpha
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param x
+	 * @param xOff
+	 * @param beta
+	 * @param y
+	 * @param yOff
+	 */
+	public static void gemvTransposed(int m, int n, double alpha,
+			double[] a, int aOff, int lda,
+			double[] x, int xOff,
+			double beta, double[] y, int yOff) {
+		
+		if(beta == 0) for(int c = 0; c < n; c++) y[yOff + c] = 0;
+		else if(beta != 1) scal(n, beta, y, yOff);
+		
+		for(int r = 0; r < m; r++) axpy(n, alpha * x[xOff + r], a, aOff + r * lda, y, yOff);
+		
+	}
+	
+	/**
+	 * Computes the rank-1 update A = alpha * x * y^T + A, where A is an m x n matrix, x has
+	 * m entries and y has n entries. Each row of A is updated with a single axpy, so A is
+	 * read and written exactly once. Rows whose entry of x is zero are skipped.
+	 * @param m
+	 * @param n
+	 * @param alpha
+	 * @param x
+	 * @param xOff
+	 * @param y
+	 * @param yOff
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 */
+	public static void ger(int m, int n, double alpha,
+			double[] x, int xOff,
+			double[] y, int yOff,
+			double[] a, int aOff, int lda) {
+		
+		if(alpha == 0) return;
+		
+		for(int r = 0; r < m; r++) {
+			double scale = alpha * x[xOff + r];
+			if(scale != 0) KERNELS.axpy(n, scale, y, yOff, a, aOff + r * lda);
+		}
+		
+	}
+	
+	/**
+	 * Single precision version of gemm(). Each row of C is built up from the rows of B
+	 * with axpy, scaled by the matching entries of A, so every inner loop runs over
+	 * contiguous floats. The rows of B are processed in panels that stay in cache while
+	 * every row of A is swept past them.
+	 * @param m
+	 * @param n
+	 * @param k
+	 * @param alpha
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param b
+	 * @param bOff
+	 * @param ldb
+	 * @param beta
+	 * @param c
+	 * @param cOff
+	 * @param ldc
+	 */
+	public static void gemm(int m, int n, int k, float alpha,
+			float[] a, int aOff, int lda,
+			float[] b, int bOff, int ldb,
+			float beta, float[] c, int cOff, int ldc) {
+		
+		scaleRows(m, n, beta, c, cOff, ldc);
+		
+		if(alpha == 0) return;
+		
+		int block = Math.max(1, (2 * KC * NC) / Math.max(1, n));
+		
+		for(int p0 = 0; p0 < k; p0 += block) {
+			
+			int p1 = Math.min(k, p0 + block);
+			
+			for(int i = 0; i < m; i++) {
+				
+				int aRow = aOff + i * lda;
+				int cRow = cOff + i * ldc;
+				
+				for(int p = p0; p < p1; p++) {
+					float x = alpha * a[aRow + p];
+					if(x != 0) KERNELS.axpy(n, x, b, bOff + p * ldb, c, cRow);
+				}
+				
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Single precision version of gemmNT().
+	 * @param m
+	 * @param n
+	 * @param k
+	 * @param alpha
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param b
+	 * @param bOff
+	 * @param ldb
+	 * @param beta
+	 * @param c
+	 * @param cOff
+	 * @param ldc
+	 */
+	public static void gemmNT(int m, int n, int k, float alpha,
+			float[] a, int aOff, int lda,
+			float[] b, int bOff, int ldb,
+			float beta, float[] c, int cOff, int ldc) {
+		
+		int block = Math.max(1, (2 * KC * NC) / Math.max(1, k));
+		
+		for(int j0 = 0; j0 < n; j0 += block) {
+			
+			int j1 = Math.min(n, j0 + block);
+			
+			for(int i = 0; i < m; i++) {
+				
+				int aRow = aOff + i * lda;
+				int cRow = cOff + i * ldc;
+				
+				for(int j = j0; j < j1; j++) {
+					float dot = alpha * KERNELS.dot(k, a, aRow, b, bOff + j * ldb);
+					c[cRow + j] = (beta == 0) ? dot : dot + beta * c[cRow + j];
+				}
+				
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Single precision version of gemmTN().
+	 * @param m
+	 * @param n
+	 * @param k
+	 * @param alpha
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param b
+	 * @param bOff
+	 * @param ldb
+	 * @param beta
+	 * @param c
+	 * @param cOff
+	 * @param ldc
+	 */
+	public static void gemmTN(int m, int n, int k, float alpha,
+			float[] a, int aOff, int lda,
+			float[] b, int bOff, int ldb,
+			float beta, float[] c, int cOff, int ldc) {
+		
+		scaleRows(m, n, beta, c, cOff, ldc);
+		
+		if(alpha == 0) return;
+		
+		int block = Math.max(1, (2 * KC * NC) / Math.max(1, n));
+		
+		for(int i0 = 0; i0 < m; i0 += block) {
+			
+			int i1 = Math.min(m, i0 + block);
+			
+			for(int p = 0; p < k; p++) {
+				
+				int aRow = aOff + p * lda;
+				int bRow = bOff + p * ldb;
+				
+				for(int i = i0; i < i1; i++) {
+					float x = alpha * a[aRow + i];
+					if(x != 0) KERNELS.axpy(n, x, b, bRow, c, cOff + i * ldc);
+				}
+				
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Computes C = beta * C for an m x n single precision matrix.
+	 */
+	private static void scaleRows(int m, int n, float beta, float[] c, int cOff, int ldc) {
+		
+		if(beta == 1) return;
+		
+		for(int i = 0; i < m; i++) {
+			int row = cOff + i * ldc;
+			if(beta == 0) for(int j = 0; j < n; j++) c[row + j] = 0;
+			else KERNELS.scal(n, beta, c, row);
+		}
+		
+	}
+	
+	/**
+	 * Returns the dot product of the n single precision entries of x and y starting at the
+	 * given offsets, accumulated in single precision.
+	 * @param n
+	 * @param x
+	 * @param xOff
+	 * @param y
+	 * @param yOff
+	 * @return dot product
+	 */
+	public static float dot(int n, float[] x, int xOff, float[] y, int yOff) {
+		
+		return KERNELS.dot(n, x, xOff, y, yOff);
+		
+	}
+	
+	/**
+	 * Computes y = alpha * x + y over n single precision entries.
+	 * @param n
+	 * @param alpha
+	 * @param x
+	 * @param xOff
+	 * @param y
+	 * @param yOff
+	 */
+	public static void axpy(int n, float alpha, float[] x, int xOff, float[] y, int yOff) {
+		
+		KERNELS.axpy(n, alpha, x, xOff, y, yOff);
+		
+	}
+	
+	/**
+	 * Computes x = alpha * x over n single precision entries.
+	 * @param n
+	 * @param alpha
+	 * @param x
+	 * @param xOff
+	 */
+	public static void scal(int n, float alpha, float[] x, int xOff) {
+		
+		KERNELS.scal(n, alpha, x, xOff);
+		
+	}
+	
+	/**
+	 * Single precision version of gemv().
+	 * @param m
+	 * @param n
+	 * @param alpha
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param x
+	 * @param xOff
+	 * @param beta
+	 * @param y
+	 * @param yOff
+	 */
+	public static void gemv(int m, int n, float alpha,
+			float[] a, int aOff, int lda,
+			float[] x, int xOff,
+			float beta, float[] y, int yOff) {
+		
+		for(int r = 0; r < m; r++) {
+			
+			float dot = alpha * dot(n, a, aOff + r * lda, x, xOff);
+			
+			y[yOff + r] = (beta == 0) ? dot : dot + beta * y[yOff + r];
+			
+		}
+		
+	}
+	
+	/**
+	 * Single precision version of gemvTransposed().
+	 * @param m
+	 * @param n
+	 * @param alpha
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param x
+	 * @param xOff
+	 * @param beta
+	 * @param y
+	 * @param yOff
+	 */
+	public static void gemvTransposed(int m, int n, float alpha,
+			float[] a, int aOff, int lda,
+			float[] x, int xOff,
+			float beta, float[] y, int yOff) {
+		
+		if(beta == 0) for(int c = 0; c < n; c++) y[yOff + c] = 0;
+		else if(beta != 1) scal(n, beta, y, yOff);
+		
+		for(int r = 0; r < m; r++) axpy(n, alpha * x[xOff + r], a, aOff + r * lda, y, yOff);
+		
+	}
+	
+	/**
+	 * Single precision version of ger().
+	 * @param m
+	 * @param n
+	 * @param alpha
+	 * @param x
+	 * @param xOff
+	 * @param y
+	 * @param yOff
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 */
+	public static void ger(int m, int n, float alpha,
+			float[] x, int xOff,
+			float[] y, int yOff,
+			float[] a, int aOff, int lda) {
+		
+		if(alpha == 0) return;
+		
+		for(int r = 0; r < m; r++) {
+			float scale = alpha * x[xOff + r];
+			if(scale != 0) KERNELS.axpy(n, scale, y, yOff, a, aOff + r * lda);
+		}
+		
+	}
+	
+	/**
+	 * Returns the dot product of the n single precision entries of x and y starting at the
+	 * given offsets, accumulated in double precision so that long sums do not lose the
+	 * low order bits of their terms.
+	 * @param n
+	 * @param x
+	 * @param xOff
+	 * @param y
+	 * @param yOff
+	 * @return dot product
+	 */
+	public static double dotWide(int n, float[] x, int xOff, float[] y, int yOff) {
+		
+		return KERNELS.dotWide(n, x, xOff, y, yOff);
+		
+	}
+	
+	/**
+	 * Computes y = alpha * x + y over n entries, adding the single precision entries of x
+	 * into the double precision entries of y.
+	 * @param n
+	 * @param alpha
+	 * @param x
+	 * @param xOff
+	 * @param y
+	 * @param yOff
+	 */
+	public static void axpyWide(int n, double alpha, float[] x, int xOff, double[] y, int yOff) {
+		
+		KERNELS.axpyWide(n, alpha, x, xOff, y, yOff);
+		
+	}
+	
+	/**
+	 * Computes C = A * B^T for single precision matrices like gemmNT(), but accumulates
+	 * each entry of C in double precision before rounding it.
+	 * @param m
+	 * @param n
+	 * @param k
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param b
+	 * @param bOff
+	 * @param ldb
+	 * @param c
+	 * @param cOff
+	 * @param ldc
+	 */
+	public static void gemmNTWide(int m, int n, int k,
+			float[] a, int aOff, int lda,
+			float[] b, int bOff, int ldb,
+			float[] c, int cOff, int ldc) {
+		
+		int block = Math.max(1, (2 * KC * NC) / Math.max(1, k));
+		
+		for(int j0 = 0; j0 < n; j0 += block) {
+			
+			int j1 = Math.min(n, j0 + block);
+			
+			for(int i = 0; i < m; i++) {
+				
+				int aRow = aOff + i * lda;
+				int cRow = cOff + i * ldc;
+				
+				for(int j = j0; j < j1; j++) c[cRow + j] = (float) KERNELS.dotWide(k, a, aRow, b, bOff + j * ldb);
+				
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Computes C = alpha * A * B + C, where A and B are single precision and C, which
+	 * accumulates the result, is double precision.
+	 * @param m
+	 * @param n
+	 * @param k
+	 * @param alpha
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param b
+	 * @param bOff
+	 * @param ldb
+	 * @param c
+	 * @param cOff
+	 * @param ldc
+	 */
+	public static void gemmWide(int m, int n, int k, double alpha,
+			float[] a, int aOff, int lda,
+			float[] b, int bOff, int ldb,
+			double[] c, int cOff, int ldc) {
+		
+		int block = Math.max(1, (KC * NC) / Math.max(1, n));
+		
+		for(int p0 = 0; p0 < k; p0 += block) {
+			
+			int p1 = Math.min(k, p0 + block);
+			
+			for(int i = 0; i < m; i++) {
+				
+				int aRow = aOff + i * lda;
+				int cRow = cOff + i * ldc;
+				
+				for(int p = p0; p < p1; p++) {
+					double x = alpha * a[aRow + p];
+					if(x != 0) KERNELS.axpyWide(n, x, b, bOff + p * ldb, c, cRow);
+				}
+				
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Computes C = alpha * A^T * B + C, where A and B are single precision and C, which
+	 * accumulates the result, is double precision.
+	 * @param m
+	 * @param n
+	 * @param k
+	 * @param alpha
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param b
+	 * @param bOff
+	 * @param ldb
+	 * @param c
+	 * @param cOff
+	 * @param ldc
+	 */
+	public static void gemmTNWide(int m, int n, int k, double alpha,
+			float[] a, int aOff, int lda,
+			float[] b, int bOff, int ldb,
+			double[] c, int cOff, int ldc) {
+		
+		int block = Math.max(1, (KC * NC) / Math.max(1, n));
+		
+		for(int i0 = 0; i0 < m; i0 += block) {
+			
+			int i1 = Math.min(m, i0 + block);
+			
+			for(int p = 0; p < k; p++) {
+				
+				int aRow = aOff + p * lda;
+				int bRow = bOff + p * ldb;
+				
+				for(int i = i0; i < i1; i++) {
+					double x = alpha * a[aRow + i];
+					if(x != 0) KERNELS.axpyWide(n, x, b, bRow, c, cOff + i * ldc);
+				}
+				
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Returns the dot product of the n signed bytes of x and y starting at the given
+	 * offsets, accumulated exactly in an int.
+	 * @param n
+	 * @param x
+	 * @param xOff
+	 * @param y
+	 * @param yOff
+	 * @return dot product
+	 */
+	public static int dot(int n, byte[] x, int xOff, byte[] y, int yOff) {
+		
+		return KERNELS.dot(n, x, xOff, y, yOff);
+		
+	}
+	
+	/**
+	 * Computes C = A * B^T, where A is an m x k matrix and B an n x k matrix of signed bytes
+	 * and C is an m x n matrix, accumulating each entry of C exactly in an int. The rows of
+	 * B are processed in blocks that stay in cache while every row of A is swept past them,
+	 * as in gemmNT(), and since they are bytes the blocks hold eight times as many entries.
+	 * @param m
+	 * @param n
+	 * @param k
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param b
+	 * @param bOff
+	 * @param ldb
+	 * @param c
+	 * @param cOff
+	 * @param ldc
+	 */
+	public static void gemmNT(int m, int n, int k,
+			byte[] a, int aOff, int lda,
+			byte[] b, int bOff, int ldb,
+			int[] c, int cOff, int ldc) {
+		
+		int block = Math.max(1, (8 * KC * NC) / Math.max(1, k));
+		
+		for(int j0 = 0; j0 < n; j0 += block) {
+			
+			int j1 = Math.min(n, j0 + block);
+			
+			for(int i = 0; i < m; i++) {
+				
+				int aRow = aOff + i * lda;
+				int cRow = cOff + i * ldc;
+				
+				//Four rows of B at a time, so each chunk of the row of A is widened once for all four
+				int j = j0;
+				for(; j + 4 <= j1; j += 4) KERNELS.dot4(k, a, aRow, b, bOff + j * ldb, ldb, c, cRow + j);
+				for(; j < j1; j++) c[cRow + j] = KERNELS.dot(k, a, aRow, b, bOff + j * ldb);
+				
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Computes y = A * x for an m x n matrix of signed bytes, accumulating each entry of y
+	 * exactly in an int. Scaling the result back to real values is left to the caller.
+	 * @param m
+	 * @param n
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param x
+	 * @param xOff
+	 * @param y
+	 * @param yOff
+	 */
+	public static void gemv(int m, int n,
+			byte[] a, int aOff, int lda,
+			byte[] x, int xOff,
+			int[] y, int yOff) {
+		
+		int r = 0;
+		for(; r + 4 <= m; r += 4) KERNELS.dot4(n, x, xOff, a, aOff + r * lda, lda, y, yOff + r);
+		for(; r < m; r++) y[yOff + r] = KERNELS.dot(n, a, aOff + r * lda, x, xOff);
+		
+	}
+	
+	/**
+	 * Computes y = alpha * A * x + beta * y, where A is an m row sparse matrix in compressed
+	 * sparse row form: the nonzero entries of row r are values[rowStarts[r]] up to but not
+	 * including values[rowStarts[r + 1]], and lie in the matching entries of columns.
+	 * @param m
+	 * @param alpha
+	 * @param rowStarts
+	 * @param columns
+	 * @param values
+	 * @param x
+	 * @param xOff
+	 * @param beta
+	 * @param y
+	 * @param yOff
+	 */
+	public static void spmv(int m, double alpha,
+			int[] rowStarts, int[] columns, double[] values,
+			double[] x, int xOff,
+			double beta, double[] y, int yOff) {
+		
+		for(int r = 0; r < m; r++) {
+			
+			int start = rowStarts[r];
+			double dot = alpha * KERNELS.dotSparse(rowStarts[r + 1] - start, values, columns, start, x, xOff);
+			
+			y[yOff + r] = (beta == 0) ? dot : dot + beta * y[yOff + r];
+			
+		}
+		
+	}
+	
+	/**
+	 * Computes C = alpha * A * B + beta * C, where A is an m row sparse matrix in compressed
+	 * sparse row form, as in spmv(), B is a dense matrix with n columns and C is an m x n
+	 * matrix. Each row of C is built up from the rows of B picked out by the nonzero entries
+	 * of the matching row of A, so the work is proportional to the number of nonzero entries.
+	 * @param m
+	 * @param n
+	 * @param alpha
+	 * @param rowStarts
+	 * @param columns
+	 * @param values
+	 * @param b
+	 * @param bOff
+	 * @param ldb
+	 * @param beta
+	 * @param c
+	 * @param cOff
+	 * @param ldc
+	 */
+	public static void spmm(int m, int n, double alpha,
+			int[] rowStarts, int[] columns, double[] values,
+			double[] b, int bOff, int ldb,
+			double beta, double[] c, int cOff, int ldc) {
+		
+		for(int r = 0; r < m; r++) {
+			
+			int cRow = cOff + r * ldc;
+			
+			if(beta == 0) Arrays.fill(c, cRow, cRow + n, 0.0);
+			else if(beta != 1) KERNELS.scal(n, beta, c, cRow);
+			
+			for(int i = rowStarts[r]; i < rowStarts[r + 1]; i++) {
+				KERNELS.axpy(n, alpha * values[i], b, bOff + columns[i] * ldb, c, cRow);
+			}
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,74 @@
+package linearAlgebra;
+
+/**
+ * The innermost vector loops used by Blas. Blas chooses a single implementation
+ * of this interface when it is first loaded, so every call made through it has
+ * only one possible target and can be inlined by the JIT.
+ * @author sbush
+ *
+ */
+interface BlasKernels {
+
+	/**
+	 * Returns the dot product of the n entries of x and y starting at the given offsets.
+	 */
+	double dot(int n, double[] x, int xOff, double[] y, int yOff);
+	
+	/**
+	 * Computes y = alpha * x + y over n entries.
+	 */
+	void axpy(int n, double alpha, double[] x, int xOff, double[] y, int yOff);
+	
+	/**
+	 * Computes x = alpha * x over n entries.
+	 */
+	void scal(int n, double alpha, double[] x, int xOff);
+	
+	/**
+	 * Returns the dot product of the n entries of x and y, accumulated in single precision.
+	 */
+	float dot(int n, float[] x, int xOff, float[] y, int yOff);
+	
+	/**
+	 * Computes y = alpha * x + y over n single precision entries.
+	 */
+	void axpy(int n, float alpha, float[] x, int xOff, float[] y, int yOff);
+	
+	/**
+	 * Computes x = alpha * x over n single precision entries.
+	 */
+	void scal(int n, float alpha, float[] x, int xOff);
+	
+	/**
+	 * Returns the dot product of the n single precision entries of x and y, accumulated in
+	 * double precision.
+	 */
+	double dotWide(int n, float[] x, int xOff, float[] y, int yOff);
+	
+	/**
+	 * Computes y = alpha * x + y over n entries, where x is single precision and y, which
+	 * accumulates the result, is double precision.
+	 */
+	void axpyWide(int n, double alpha, float[] x, int xOff, double[] y, int yOff);
+	
+	/**
+	 * Returns the dot product of the n signed bytes of x and y, accumulated in an int. The
+	 * sum cannot overflow for n up to 2^31 / 128^2, about 131,000 entries.
+	 */
+	int dot(int n, byte[] x, int xOff, byte[] y, int yOff);
+	
+	/**
+	 * Writes the dot products of the n signed bytes of x with each of four rows of A, the
+	 * first starting at aOff and each lda entries after the last, into y[yOff] to
+	 * y[yOff + 3]. Each entry of x is loaded once for all four rows.
+	 */
+	void dot4(int n, byte[] x, int xOff, byte[] a, int aOff, int lda, int[] y, int yOff);
+	
+	/**
+	 * Returns the dot product of a sparse row, whose n entries are values[off] onwards and
+	 * lie in the columns given by indices[off] onwards, with the dense vector starting at
+	 * x[xOff].
+	 */
+	double dotSparse(int n, double[] values, int[] indices, int off, double[] x, int xOff);
+	
+}
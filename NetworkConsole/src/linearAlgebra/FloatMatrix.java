@@ -0,0 +1,176 @@
+package linearAlgebra;
+
+import java.util.Arrays;
+
+/**
+ * A single precision counterpart of Matrix. Entries are stored in a single row-major float
+ * array, half the size of the double array backing a Matrix of the same shape, so every
+ * kernel that streams a FloatMatrix through memory moves half as many bytes. Only the
+ * operations needed to run networks in single precision are provided; conversions to and
+ * from Matrix round each entry to the nearest float.
+ * @author sbush
+ *
+ */
+public class FloatMatrix {
+
+	private final float[] data;
+	private final int rows;
+	private final int cols;
+	
+	/**
+	 * Constructs a new matrix with the given number of rows and columns, initializing each
+	 * entry to zero.
+	 * @param rows
+	 * @param columns
+	 */
+	public FloatMatrix(int rows, int columns) {
+		this.rows = rows;
+		this.cols = columns;
+		data = new float[rows * columns];
+	}
+	
+	/**
+	 * Constructs a new matrix holding the entries of the given matrix, each rounded to the
+	 * nearest float.
+	 * @param source
+	 */
+	public FloatMatrix(Matrix source) {
+		this(source.getRowCount(), source.getColCount());
+		copyFrom(source);
+	}
+	
+	public void set(int row, int col, float val) {
+		data[row * cols + col] = val;
+	}
+	
+	public float get(int row, int col) {
+		return data[row * cols + col];
+	}
+	
+	/**
+	 * Returns the row-major array backing this matrix. Changes made to the returned array
+	 * are reflected in the matrix. The entry at (row, col) is found at
+	 * getOffset() + row * getStride() + col.
+	 * @return backing array
+	 */
+	public float[] getData() {
+		return data;
+	}
+	
+	/**
+	 * Returns the index of the entry at (0, 0) within the array returned by getData().
+	 * @return offset
+	 */
+	public int getOffset() {
+		return 0;
+	}
+	
+	/**
+	 * Returns the distance in the backing array between the starts of two consecutive rows.
+	 * @return row stride
+	 */
+	public int getStride() {
+		return cols;
+	}
+	
+	public int getRowCount() {
+		return rows;
+	}
+	
+	public int getColCount() {
+		return cols;
+	}
+	
+	/**
+	 * Computes y = alpha * this * x + beta * y.
+	 * @param alpha
+	 * @param x
+	 * @param beta
+	 * @param y
+	 */
+	public void gemv(float alpha, FloatVector x, float beta, FloatVector y) {
+		
+		if(x.size() != cols || y.size() != rows)
+			throw new IllegalArgumentException("Vector sizes do not match the matrix.");
+		
+		Blas.gemv(rows, cols, alpha, data, 0, cols, x.getData(), 0, beta, y.getData(), 0);
+		
+	}
+	
+	/**
+	 * Adds alpha * x * y^T to this matrix in place.
+	 * @param alpha
+	 * @param x
+	 * @param y
+	 */
+	public void rank1Update(float alpha, FloatVector x, FloatVector y) {
+		
+		if(x.size() != rows || y.size() != cols)
+			throw new IllegalArgumentException("Vector sizes do not match the matrix.");
+		
+		Blas.ger(rows, cols, alpha, x.getData(), 0, y.getData(), 0, data, 0, cols);
+		
+	}
+	
+	/**
+	 * Adds alpha * x to this matrix in place.
+	 * @param alpha
+	 * @param x
+	 */
+	public void axpy(float alpha, FloatMatrix x) {
+		
+		if(x.rows != rows || x.cols != cols)
+			throw new IllegalArgumentException("Cannot add matrices of unequal size.");
+		
+		Blas.axpy(data.length, alpha, x.data, 0, data, 0);
+		
+	}
+	
+	/**
+	 * Sets every entry of this matrix to zero.
+	 */
+	public void clear() {
+		Arrays.fill(data, 0);
+	}
+	
+	/**
+	 * Copies the entries of the given matrix into this one, rounding each to the nearest float.
+	 * @param source
+	 */
+	public void copyFrom(Matrix source) {
+		
+		if(source.getRowCount() != rows || source.getColCount() != cols)
+			throw new IllegalArgumentException("Cannot copy between matrices of unequal size.");
+		
+		double[] sourceData = source.getData();
+		for(int i = 0; i < data.length; i++) data[i] = (float) sourceData[i];
+		
+	}
+	
+	/**
+	 * Copies the entries of this matrix into the given double precision matrix.
+	 * @param dest
+	 */
+	public void copyInto(Matrix dest) {
+		
+		if(dest.getRowCount() != rows || dest.getColCount() != cols)
+			throw new IllegalArgumentException("Cannot copy between matrices of unequal size.");
+		
+		double[] destData = dest.getData();
+		for(int i = 0; i < data.length; i++) destData[i] = data[i];
+		
+	}
+	
+	/**
+	 * Returns a new double precision matrix holding the entries of this matrix.
+	 * @return double precision copy
+	 */
+	public Matrix toMatrix() {
+		
+		Matrix matrix = new Matrix(rows, cols);
+		copyInto(matrix);
+		return matrix;
+		
+	}
+	
+}
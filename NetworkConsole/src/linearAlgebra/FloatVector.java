@@ -0,0 +1,120 @@
+package linearAlgebra;
+
+import java.util.Arrays;
+
+/**
+ * A single precision counterpart of Vector, used together with FloatMatrix. Conversions
+ * from Vector round each entry to the nearest float.
+ * @author sbush
+ *
+ */
+public class FloatVector {
+
+	private final float[] data;
+	
+	/**
+	 * Constructs a new vector of the given size, initializing all entries to zero.
+	 * @param size
+	 */
+	public FloatVector(int size) {
+		data = new float[size];
+	}
+	
+	/**
+	 * Constructs a new vector holding the entries of the given vector, each rounded to the
+	 * nearest float.
+	 * @param source
+	 */
+	public FloatVector(Vector source) {
+		this(source.size());
+		copyFrom(source);
+	}
+	
+	public void set(int index, float val) {
+		data[index] = val;
+	}
+	
+	public float get(int index) {
+		return data[index];
+	}
+	
+	/**
+	 * Returns the array backing this vector. Changes made to the returned array are
+	 * reflected in the vector.
+	 * @return backing array
+	 */
+	public float[] getData() {
+		return data;
+	}
+	
+	public int size() {
+		return data.length;
+	}
+	
+	/**
+	 * Adds alpha * x to this vector in place.
+	 * @param alpha
+	 * @param x
+	 */
+	public void axpy(float alpha, FloatVector x) {
+		
+		if(x.data.length != data.length)
+			throw new IllegalArgumentException("Cannot add vectors of unequal size.");
+		
+		Blas.axpy(data.length, alpha, x.data, 0, data, 0);
+		
+	}
+	
+	/**
+	 * Sets every entry of this vector to zero.
+	 */
+	public void clear() {
+		Arrays.fill(data, 0);
+	}
+	
+	/**
+	 * Copies the entries of the given vector into this one, rounding each to the nearest float.
+	 * @param source
+	 */
+	public void copyFrom(Vector source) {
+		
+		if(source.size() != data.length)
+			throw new IllegalArgumentException("Cannot copy between vectors of unequal size.");
+		
+		double[] sourceData = source.getData();
+		for(int i = 0; i < data.length; i++) data[i] = (float) sourceData[i];
+		
+	}
+	
+	/**
+	 * Copies the entries of this vector into the given double precision vector.
+	 * @param dest
+	 */
+	public void copyInto(Vector dest) {
+		
+		if(dest.size() != data.length)
+			throw new IllegalArgumentException("Cannot copy between vectors of unequal size.");
+		
+		double[] destData = dest.getData();
+		for(int i = 0; i < data.length; i++) destData[i] = data[i];
+		
+	}
+	
+	/**
+	 * Returns a new double precision vector holding the entries of this vector.
+	 * @return double precision copy
+	 */
+	public Vector toVector() {
+		
+		Vector vector = new Vector(data.length);
+		copyInto(vector);
+		return vector;
+		
+	}
+	
+	@Override
+	public String toString() {
+		return Arrays.toString(data);
+	}
+	
+}
@@ -5,15 +5,21 @@ import java.util.Arrays;
 public class Matrix {
 
 	//Data
-		private double[][] data;
+		private final double[] data;
+		private final int rows;
+		private final int cols;
 		
 		/**
 		 * Constructs a new matrix object with the given number of rows and columns, initializing each entry to zero.
+		 * Entries are stored in a single row-major array, so the entry at (row, col) lives at index
+		 * row * columns + col.
 		 * @param rows
 		 * @param columns
 		 */
 		public Matrix(int rows, int columns) {
-			data = new double[rows][columns];
+			this.rows = rows;
+			this.cols = columns;
+			data = new double[rows * columns];
 		}
 		
 		/**
@@ -28,20 +34,18 @@ public class Matrix {
 					"Matrix object cannot be created from a non-rectangular array."
 				);
 			
-			data = new double[rows][cols];
+			this.rows = rows;
+			this.cols = cols;
+			data = new double[rows * cols];
 			
 			for(int j = 0; j < rows; j++) {
 				
-				for(int i = 0; i < cols; i++) {
-					
-					data[j][i] = sum[j][i];
-					
-				}
+				System.arraycopy(sum[j], 0, data, j * cols, cols);
 				
 			}
 			
 		}
-
+		
 		/**
 		 * Sets the value of the given row and column equal to the given double value.
 		 * @param row
@@ -49,7 +53,7 @@ public class Matrix {
 		 * @param val
 		 */
 		public void set(int row, int col, double val) {
-			data[row][col] = val;
+			data[row * cols + col] = val;
 		}
 		
 		/**
@@ -60,7 +64,33 @@ public class Matrix {
 		 * @return value
 		 */
 		public double get(int row, int col) {
-			return data[row][col];
+			return data[row * cols + col];
+		}
+		
+		/**
+		 * Returns the row-major array backing this matrix. Changes made to the
+		 * returned array are reflected in the matrix. The entry at (row, col) is
+		 * found at getOffset() + row * getStride() + col.
+		 * @return backing array
+		 */
+		public double[] getData() {
+			return data;
+		}
+		
+		/**
+		 * Returns the index of the entry at (0, 0) within the array returned by getData().
+		 * @return offset
+		 */
+		public int getOffset() {
+			return 0;
+		}
+		
+		/**
+		 * Returns the distance in the backing array between the starts of two consecutive rows.
+		 * @return row stride
+		 */
+		public int getStride() {
+			return cols;
 		}
 		
 		/**
@@ -70,10 +100,10 @@ public class Matrix {
 		 */
 		public double[][] toArray() {
 			
-			double[][] copyOfMatrix = new double[data.length][data[0].length];
+			double[][] copyOfMatrix = new double[rows][cols];
 			
-			for(int i = 0; i < data.length; i++)
-				copyOfMatrix[i] = Arrays.copyOf(data[i], data[i].length);
+			for(int i = 0; i < rows; i++)
+				System.arraycopy(data, i * cols, copyOfMatrix[i], 0, cols);
 			
 			return copyOfMatrix;
 			
@@ -84,7 +114,7 @@ public class Matrix {
 		 * @return number of rows
 		 */
 		public int getRowCount() {
-			return data.length;
+			return rows;
 		}
 		
 		/**
@@ -92,7 +122,7 @@ public class Matrix {
 		 * @return number of columns
 		 */
 		public int getColCount() {
-			return data[0].length;	
+			return cols;	
 		}
 		
 		/**
@@ -108,11 +138,58 @@ public class Matrix {
 						+ "column count of the first does not equal the row count of the"
 						+ "second.");
 			
-			Matrix product = new Matrix(this.getRowCount(), factor.getColCount());
+			Matrix product = new Matrix(rows, factor.cols);
 			
-			for(int j = 0; j < product.getRowCount(); j++)
-				for(int i = 0; i < product.getColCount(); i++)
-					product.set(j, i, this.getRow(j).dot(factor.getCol(i)));
+			Blas.gemm(rows, factor.cols, cols, 1.0,
+					this.data, 0, this.cols,
+					factor.data, 0, factor.cols,
+					0.0, product.data, 0, product.cols);
+			
+			return product;
+			
+		}
+		
+		/**
+		 * Returns a new matrix object equal to the result of right-multiplying the
+		 * transpose of the given matrix with the current matrix.
+		 * @param factor
+		 * @return product
+		 */
+		public Matrix multiplyTransposed(Matrix factor) {
+			
+			if(this.cols != factor.cols)
+				throw new IllegalArgumentException("Cannot multiply a matrix by the transpose of another "
+						+ "unless both have the same column count.");
+			
+			Matrix product = new Matrix(rows, factor.rows);
+			
+			Blas.gemmNT(rows, factor.rows, cols, 1.0,
+					this.data, 0, this.cols,
+					factor.data, 0, factor.cols,
+					0.0, product.data, 0, product.cols);
+			
+			return product;
+			
+		}
+		
+		/**
+		 * Returns a new matrix object equal to the result of right-multiplying the
+		 * given matrix with the transpose of the current matrix.
+		 * @param factor
+		 * @return product
+		 */
+		public Matrix transposeMultiply(Matrix factor) {
+			
+			if(this.rows != factor.rows)
+				throw new IllegalArgumentException("Cannot multiply the transpose of a matrix by another "
+						+ "unless both have the same row count.");
+			
+			Matrix product = new Matrix(cols, factor.cols);
+			
+			Blas.gemmTN(cols, factor.cols, rows, 1.0,
+					this.data, 0, this.cols,
+					factor.data, 0, factor.cols,
+					0.0, product.data, 0, product.cols);
 			
 			return product;
 			
@@ -131,39 +208,71 @@ public class Matrix {
 						+ "if the column count of the matrix does not equal the size of "
 						+ "the vector");
 			
-			Vector product = new Vector(this.getRowCount());
+			Vector product = new Vector(rows);
 			
-			for(int i = 0; i < product.size(); i++)
-				product.set(i, factor.dot(this.getRow(i)));
+			Blas.gemv(rows, cols, 1.0, data, 0, cols, factor.getData(), 0, 0.0, product.getData(), 0);
 			
 			return product;
 			
 		}
 		
 		/**
-		 * Private helper method returning a vector representation of
-		 * the row of this matrix at the given index. Used by the muliply()
-		 * methods.
-		 * @param rowIndex
-		 * @return row vector
+		 * Writes the result of right-multiplying the given matrix with the current
+		 * matrix into dest, overwriting its previous contents.
+		 * @param factor
+		 * @param dest
 		 */
-		private Vector getRow(int rowIndex) {
-			return new Vector(data[rowIndex]);
+		public void multiplyInto(Matrix factor, Matrix dest) {
+			
+			if(this.cols != factor.rows) 
+				throw new IllegalArgumentException("Cannot multiply two matrices if the "
+						+ "column count of the first does not equal the row count of the"
+						+ "second.");
+			
+			if(dest.rows != this.rows || dest.cols != factor.cols)
+				throw new IllegalArgumentException("Destination matrix must have as many rows as the "
+						+ "first factor and as many columns as the second.");
+			
+			Blas.gemm(rows, factor.cols, cols, 1.0,
+					this.data, 0, this.cols,
+					factor.data, 0, factor.cols,
+					0.0, dest.data, 0, dest.cols);
+			
 		}
 		
 		/**
-		 * Private helper method returning a vector representation of
-		 * the column of this matrix at the given index. Used by the
-		 * multiply(Matrix factor) method.
-		 * @param rowIndex
-		 * @return column vector
+		 * Writes the result of multiplying the given vector with the current matrix
+		 * into dest, overwriting its previous contents.
+		 * @param factor
+		 * @param dest
 		 */
-		private Vector getCol(int colIndex) {
-			Vector column = new Vector(this.getRowCount());
-			for(int i = 0; i < column.size(); i++) {
-				column.set(i, this.get(i, colIndex));
-			}
-			return column;
+		public void multiplyInto(Vector factor, Vector dest) {
+			
+			gemv(1.0, factor, 0.0, dest);
+			
+		}
+		
+		/**
+		 * Computes y = alpha * M * x + beta * y, where M is the current matrix,
+		 * storing the result in y.
+		 * @param alpha
+		 * @param x
+		 * @param beta
+		 * @param y
+		 */
+		public void gemv(double alpha, Vector x, double beta, Vector y) {
+			
+			if(this.cols != x.size()) 
+				throw new IllegalArgumentException("Cannot multiply a matrix and a vector "
+						+ "if the column count of the matrix does not equal the size of "
+						+ "the vector");
+			
+			if(this.rows != y.size())
+				throw new IllegalArgumentException("Destination vector must be as long as the "
+						+ "row count of the matrix.");
+			
+			Blas.gemv(rows, cols, alpha, data, 0, cols, x.getData(), 0, beta, y.getData(), 0);
+			
 		}
 		
 		/**
@@ -177,19 +286,10 @@ public class Matrix {
 			if(addend.getRowCount() != this.getRowCount() || addend.getColCount() != this.getColCount())
 				throw new IllegalArgumentException("Matrices of unequal size cannot be added.");
 			
-			Matrix sum = new Matrix(this.getRowCount(), this.getColCount());
+			Matrix sum = new Matrix(rows, cols);
 			
-			for(int r = 0, c = 0; r < this.getRowCount();) {
-				
-				sum.set(r, c, this.get(r, c) + addend.get(r, c));
-				
-				c++;
-				if(c == this.getColCount()) {
-					c = 0;
-					r++;
-				}
-				
-			}
+			System.arraycopy(data, 0, sum.data, 0, data.length);
+			Blas.axpy(data.length, 1.0, addend.data, 0, sum.data, 0);
 			
 			return sum;
 			
@@ -203,23 +303,160 @@ public class Matrix {
 		 */
 		public Matrix scale(double scalingFactor) {
 			
-			Matrix product = new Matrix(this.getRowCount(), this.getColCount());
+			Matrix product = new Matrix(rows, cols);
 			
-			for(int r = 0, c = 0; r < this.getRowCount();) {
-				
-				product.set(r, c, scalingFactor * this.get(r, c));
-				
-				c++;
-				if(c == this.getColCount()) {
-					c = 0;
-					r++;
-				}
-			}
+			System.arraycopy(data, 0, product.data, 0, data.length);
+			Blas.scal(data.length, scalingFactor, product.data, 0);
 			
 			return product;
 			
 		}
 		
+		/**
+		 * Adds the entries of the given vector to every column of the current matrix,
+		 * so that entry r of the vector is added to each entry of row r.
+		 * @param addend
+		 */
+		public void addToColumns(Vector addend) {
+			
+			if(addend.size() != rows)
+				throw new IllegalArgumentException("Vector must be as long as the row count of the matrix.");
+			
+			double[] v = addend.getData();
+			
+			for(int r = 0, rowStart = 0; r < rows; r++, rowStart += cols) {
+				double x = v[r];
+				for(int c = 0; c < cols; c++) data[rowStart + c] += x;
+			}
+			
+		}
+		
+		/**
+		 * Returns a new vector containing the sum of each row of the current matrix.
+		 * @return row sums
+		 */
+		public Vector rowSums() {
+			
+			Vector sums = new Vector(rows);
+			
+			for(int r = 0, rowStart = 0; r < rows; r++, rowStart += cols) {
+				double sum = 0;
+				for(int c = 0; c < cols; c++) sum += data[rowStart + c];
+				sums.set(r, sum);
+			}
+			
+			return sums;
+			
+		}
+		
+		/**
+		 * Copies the entries of the given vector into the column of the current
+		 * matrix at the given index.
+		 * @param colIndex
+		 * @param column
+		 */
+		public void setCol(int colIndex, Vector column) {
+			
+			if(column.size() != rows)
+				throw new IllegalArgumentException("Vector must be as long as the row count of the matrix.");
+			
+			double[] v = column.getData();
+			
+			for(int r = 0; r < rows; r++) data[r * cols + colIndex] = v[r];
+			
+		}
+		
+		/**
+		 * Copies the column of the current matrix at the given index into the
+		 * given vector.
+		 * @param colIndex
+		 * @param dest
+		 */
+		public void copyColInto(int colIndex, Vector dest) {
+			
+			if(dest.size() != rows)
+				throw new IllegalArgumentException("Vector must be as long as the row count of the matrix.");
+			
+			double[] v = dest.getData();
+			
+			for(int r = 0; r < rows; r++) v[r] = data[r * cols + colIndex];
+			
+		}
+		
+		/**
+		 * Adds the given matrix to the current matrix, overwriting the entries
+		 * of the current matrix with the sum.
+		 * @param addend
+		 */
+		public void addInPlace(Matrix addend) {
+			
+			axpy(1.0, addend);
+			
+		}
+		
+		/**
+		 * Adds alpha times the given matrix to the current matrix, overwriting
+		 * the entries of the current matrix with the result.
+		 * @param alpha
+		 * @param x
+		 */
+		public void axpy(double alpha, Matrix x) {
+			
+			if(x.rows != this.rows || x.cols != this.cols)
+				throw new IllegalArgumentException("Matrices of unequal size cannot be added.");
+			
+			Blas.axpy(data.length, alpha, x.data, 0, data, 0);
+			
+		}
+		
+		/**
+		 * Adds alpha times the outer product x * y^T to the current matrix in place,
+		 * in a single pass over its entries. x must be as long as the row count
+		 * and y as long as the column count.
+		 * @param alpha
+		 * @param x
+		 * @param y
+		 */
+		public void rank1Update(double alpha, Vector x, Vector y) {
+			
+			if(x.size() != rows || y.size() != cols)
+				throw new IllegalArgumentException("Outer product must have the same dimensions as the matrix.");
+			
+			Blas.ger(rows, cols, alpha, x.getData(), 0, y.getData(), 0, data, 0, cols);
+			
+		}
+		
+		/**
+		 * Scales every entry of the current matrix by the given scaling factor.
+		 * @param scalingFactor
+		 */
+		public void scaleInPlace(double scalingFactor) {
+			
+			Blas.scal(data.length, scalingFactor, data, 0);
+			
+		}
+		
+		/**
+		 * Sets every entry of the current matrix to zero. Unlike scaling by zero, this also
+		 * clears entries that are NaN or infinite.
+		 */
+		public void clear() {
+			Arrays.fill(data, 0.0);
+		}
+		
+		/**
+		 * Copies the entries of the given matrix into the current matrix.
+		 * @param source
+		 */
+		public void copyFrom(Matrix source) {
+			
+			if(source.rows != this.rows || source.cols != this.cols)
+				throw new IllegalArgumentException("Cannot copy between matrices of unequal size.");
+			
+			System.arraycopy(source.data, 0, data, 0, data.length);
+			
+		}
+		
 		public boolean equals(Matrix other) {
 			
 			int R = this.getRowCount();
@@ -227,13 +464,9 @@ public class Matrix {
 			int C = this.getColCount();
 			if(other.getColCount() != C) return false;
 			
-			for(int r = 0; r < R; r++) {
+			for(int i = 0; i < data.length; i++) {
 				
-				for(int c = 0; c < C; c++) {
-					
-					if(this.data[r][c] != other.data[r][c]) return false;
-					
-				}
+				if(this.data[i] != other.data[i]) return false;
 				
 			}
 			
@@ -251,11 +484,11 @@ public class Matrix {
 			
 			StringBuilder message = new StringBuilder();
 			
-			for(int i = 0; i < data.length - 1; i++) {
-				message.append(Arrays.toString(data[i]) + "\n");
+			for(int i = 0; i < rows - 1; i++) {
+				message.append(Arrays.toString(Arrays.copyOfRange(data, i * cols, (i + 1) * cols)) + "\n");
 			}
 			
-			message.append(Arrays.toString(data[data.length - 1]));
+			message.append(Arrays.toString(Arrays.copyOfRange(data, (rows - 1) * cols, rows * cols)));
 			
 			return message.toString();
 			
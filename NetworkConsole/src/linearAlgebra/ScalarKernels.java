@@ -0,0 +1,172 @@
+package linearAlgebra;
+
+/**
+ * Plain Java implementation of the Blas inner loops, used whenever the
+ * jdk.incubator.vector module is not available.
+ * @author sbush
+ *
+ */
+final class ScalarKernels implements BlasKernels {
+
+	@Override
+	public double dot(int n, double[] x, int xOff, double[] y, int yOff) {
+		
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		
+		int i = 0;
+		
+		for(; i + 4 <= n; i += 4) {
+			s0 += x[xOff + i] * y[yOff + i];
+			s1 += x[xOff + i + 1] * y[yOff + i + 1];
+			s2 += x[xOff + i + 2] * y[yOff + i + 2];
+			s3 += x[xOff + i + 3] * y[yOff + i + 3];
+		}
+		
+		for(; i < n; i++) s0 += x[xOff + i] * y[yOff + i];
+		
+		return (s0 + s1) + (s2 + s3);
+		
+	}
+	
+	@Override
+	public void axpy(int n, double alpha, double[] x, int xOff, double[] y, int yOff) {
+		
+		for(int i = 0; i < n; i++) y[yOff + i] += alpha * x[xOff + i];
+		
+	}
+	
+	@Override
+	public void scal(int n, double alpha, double[] x, int xOff) {
+		
+		for(int i = 0; i < n; i++) x[xOff + i] *= alpha;
+		
+	}
+	
+	@Override
+	public float dot(int n, float[] x, int xOff, float[] y, int yOff) {
+		
+		float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		
+		int i = 0;
+		
+		for(; i + 4 <= n; i += 4) {
+			s0 += x[xOff + i] * y[yOff + i];
+			s1 += x[xOff + i + 1] * y[yOff + i + 1];
+			s2 += x[xOff + i + 2] * y[yOff + i + 2];
+			s3 += x[xOff + i + 3] * y[yOff + i + 3];
+		}
+		
+		for(; i < n; i++) s0 += x[xOff + i] * y[yOff + i];
+		
+		return (s0 + s1) + (s2 + s3);
+		
+	}
+	
+	@Override
+	public void axpy(int n, float alpha, float[] x, int xOff, float[] y, int yOff) {
+		
+		for(int i = 0; i < n; i++) y[yOff + i] += alpha * x[xOff + i];
+		
+	}
+	
+	@Override
+	public void scal(int n, float alpha, float[] x, int xOff) {
+		
+		for(int i = 0; i < n; i++) x[xOff + i] *= alpha;
+		
+	}
+	
+	@Override
+	public double dotWide(int n, float[] x, int xOff, float[] y, int yOff) {
+		
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		
+		int i = 0;
+		
+		for(; i + 4 <= n; i += 4) {
+			s0 += (double) x[xOff + i] * y[yOff + i];
+			s1 += (double) x[xOff + i + 1] * y[yOff + i + 1];
+			s2 += (double) x[xOff + i + 2] * y[yOff + i + 2];
+			s3 += (double) x[xOff + i + 3] * y[yOff + i + 3];
+		}
+		
+		for(; i < n; i++) s0 += (double) x[xOff + i] * y[yOff + i];
+		
+		return (s0 + s1) + (s2 + s3);
+		
+	}
+	
+	@Override
+	public void axpyWide(int n, double alpha, float[] x, int xOff, double[] y, int yOff) {
+		
+		for(int i = 0; i < n; i++) y[yOff + i] += alpha * x[xOff + i];
+		
+	}
+	
+	@Override
+	public int dot(int n, byte[] x, int xOff, byte[] y, int yOff) {
+		
+		int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		
+		int i = 0;
+		
+		for(; i + 4 <= n; i += 4) {
+			s0 += x[xOff + i] * y[yOff + i];
+			s1 += x[xOff + i + 1] * y[yOff + i + 1];
+			s2 += x[xOff + i + 2] * y[yOff + i + 2];
+			s3 += x[xOff + i + 3] * y[yOff + i + 3];
+		}
+		
+		for(; i < n; i++) s0 += x[xOff + i] * y[yOff + i];
+		
+		return (s0 + s1) + (s2 + s3);
+		
+	}
+	
+	@Override
+	public void dot4(int n, byte[] x, int xOff, byte[] a, int aOff, int lda, int[] y, int yOff) {
+		
+		int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		
+		for(int i = 0; i < n; i++) {
+			int xi = x[xOff + i];
+			s0 += xi * a[aOff + i];
+			s1 += xi * a[aOff + lda + i];
+			s2 += xi * a[aOff + 2 * lda + i];
+			s3 += xi * a[aOff + 3 * lda + i];
+		}
+		
+		y[yOff] = s0;
+		y[yOff + 1] = s1;
+		y[yOff + 2] = s2;
+		y[yOff + 3] = s3;
+		
+	}
+	
+	@Override
+	public double dotSparse(int n, double[] values, int[] indices, int off, double[] x, int xOff) {
+		
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		
+		int i = off;
+		int end = off + n;
+		
+		for(; i + 4 <= end; i += 4) {
+			s0 += values[i] * x[xOff + indices[i]];
+			s1 += values[i + 1] * x[xOff + indices[i + 1]];
+			s2 += values[i + 2] * x[xOff + indices[i + 2]];
+			s3 += values[i + 3] * x[xOff + indices[i + 3]];
+		}
+		
+		for(; i < end; i++) s0 += values[i] * x[xOff + indices[i]];
+		
+		return (s0 + s1) + (s2 + s3);
+		
+	}
+	
+	@Override
+	public String toString() {
+		return "Scalar";
+	}
+	
+}
@@ -0,0 +1,356 @@
+package linearAlgebra;
+
+import java.util.Arrays;
+
+/**
+ * A matrix stored in compressed sparse row (CSR) form, holding only its nonzero entries.
+ * The entries of row r are values[rowStarts[r]] up to but not including
+ * values[rowStarts[r + 1]], in increasing column order, and columns holds the column of
+ * each. Multiplying by a vector or a dense matrix takes time proportional to the number
+ * of stored entries rather than to rows * columns.
+ *
+ * The positions of the stored entries, its pattern, are fixed when the matrix is built.
+ * Their values can be refreshed from a dense matrix of the same shape, which is how a
+ * pruned layer's dense weights and its sparse copy are kept in step during training.
+ * @author sbush
+ *
+ */
+public class SparseMatrix {
+
+	private final int rows;
+	private final int cols;
+	private final int[] rowStarts;
+	private final int[] columns;
+	private final double[] values;
+	
+	/**
+	 * Constructs a sparse matrix from its compressed sparse row arrays, which are used
+	 * directly rather than copied.
+	 * @param rows
+	 * @param columns
+	 * @param rowStarts rows + 1 entries, starting at zero and never decreasing
+	 * @param columnIndices column of each stored entry, increasing within each row
+	 * @param values value of each stored entry
+	 */
+	public SparseMatrix(int rows, int columns, int[] rowStarts, int[] columnIndices, double[] values) {
+		
+		if(rowStarts.length != rows + 1 || rowStarts[0] != 0 || rowStarts[rows] != values.length
+				|| columnIndices.length != values.length)
+			throw new IllegalArgumentException("Row starts do not match the number of stored entries.");
+		
+		for(int r = 0; r < rows; r++) {
+			
+			if(rowStarts[r + 1] < rowStarts[r])
+				throw new IllegalArgumentException("Row starts must never decrease.");
+			
+			for(int i = rowStarts[r]; i < rowStarts[r + 1]; i++) {
+				if(columnIndices[i] < 0 || columnIndices[i] >= columns || (i > rowStarts[r] && columnIndices[i] <= columnIndices[i - 1]))
+					throw new IllegalArgumentException("Column indices must lie in the matrix and increase along each row.");
+			}
+			
+		}
+		
+		this.rows = rows;
+		this.cols = columns;
+		this.rowStarts = rowStarts;
+		this.columns = columnIndices;
+		this.values = values;
+		
+	}
+	
+	/**
+	 * Constructs a sparse matrix holding the nonzero entries of the given dense matrix.
+	 * @param source
+	 */
+	public SparseMatrix(Matrix source) {
+		this(source, nonZeroMask(source));
+	}
+	
+	/**
+	 * Constructs a sparse matrix holding the entries of the given dense matrix that are
+	 * marked in keep, whether or not they are zero. keep holds one flag per entry, row by row.
+	 * @param source
+	 * @param keep
+	 */
+	public SparseMatrix(Matrix source, boolean[] keep) {
+		
+		this.rows = source.getRowCount();
+		this.cols = source.getColCount();
+		this.rowStarts = new int[rows + 1];
+		
+		if(keep.length != rows * cols)
+			throw new IllegalArgumentException("There must be one flag for every entry of the matrix.");
+		
+		int stored = 0;
+		for(boolean kept : keep) if(kept) stored++;
+		
+		this.columns = new int[stored];
+		this.values = new double[stored];
+		
+		double[] data = source.getData();
+		int i = 0;
+		
+		for(int r = 0; r < rows; r++) {
+			
+			int rowStart = source.getOffset() + r * source.getStride();
+			
+			for(int c = 0; c < cols; c++) if(keep[r * cols + c]) {
+				columns[i] = c;
+				values[i] = data[rowStart + c];
+				i++;
+			}
+			
+			rowStarts[r + 1] = i;
+			
+		}
+		
+	}
+	
+	private static boolean[] nonZeroMask(Matrix source) {
+		
+		int rows = source.getRowCount();
+		int cols = source.getColCount();
+		double[] data = source.getData();
+		boolean[] mask = new boolean[rows * cols];
+		
+		for(int r = 0; r < rows; r++) {
+			int rowStart = source.getOffset() + r * source.getStride();
+			for(int c = 0; c < cols; c++) mask[r * cols + c] = (data[rowStart + c] != 0);
+		}
+		
+		return mask;
+		
+	}
+	
+	public int getRowCount() {
+		return rows;
+	}
+	
+	public int getColCount() {
+		return cols;
+	}
+	
+	/**
+	 * Returns the number of entries stored.
+	 * @return number of stored entries
+	 */
+	public int nonZeroCount() {
+		return values.length;
+	}
+	
+	/**
+	 * Returns the fraction of the matrix's entries that are stored.
+	 * @return density
+	 */
+	public double density() {
+		return values.length / ((double) rows * cols);
+	}
+	
+	/**
+	 * Returns the rows + 1 entries marking where each row starts in getColumns() and
+	 * getValues(). Changes made to the returned array are reflected in the matrix.
+	 * @return row starts
+	 */
+	public int[] getRowStarts() {
+		return rowStarts;
+	}
+	
+	/**
+	 * Returns the column of each stored entry. Changes made to the returned array are
+	 * reflected in the matrix.
+	 * @return column indices
+	 */
+	public int[] getColumns() {
+		return columns;
+	}
+	
+	/**
+	 * Returns the value of each stored entry. Changes made to the returned array are
+	 * reflected in the matrix.
+	 * @return values
+	 */
+	public double[] getValues() {
+		return values;
+	}
+	
+	/**
+	 * Returns one flag per entry of the matrix, row by row, marking the entries that are
+	 * stored.
+	 * @return pattern of stored entries
+	 */
+	public boolean[] patternMask() {
+		
+		boolean[] mask = new boolean[rows * cols];
+		
+		for(int r = 0; r < rows; r++) {
+			for(int i = rowStarts[r]; i < rowStarts[r + 1]; i++) mask[r * cols + columns[i]] = true;
+		}
+		
+		return mask;
+		
+	}
+	
+	/**
+	 * Computes y = alpha * M * x + beta * y, where M is the current matrix, storing the
+	 * result in y.
+	 * @param alpha
+	 * @param x
+	 * @param beta
+	 * @param y
+	 */
+	public void gemv(double alpha, Vector x, double beta, Vector y) {
+		
+		if(this.cols != x.size())
+			throw new IllegalArgumentException("Cannot multiply a matrix and a vector "
+					+ "if the column count of the matrix does not equal the size of "
+					+ "the vector");
+		
+		if(this.rows != y.size())
+			throw new IllegalArgumentException("Destination vector must be as long as the "
+					+ "row count of the matrix.");
+		
+		Blas.spmv(rows, alpha, rowStarts, columns, values, x.getData(), 0, beta, y.getData(), 0);
+		
+	}
+	
+	/**
+	 * Writes the result of right-multiplying the given dense matrix with the current
+	 * matrix into dest, overwriting its previous contents.
+	 * @param factor
+	 * @param dest
+	 */
+	public void multiplyInto(Matrix factor, Matrix dest) {
+		
+		if(this.cols != factor.getRowCount())
+			throw new IllegalArgumentException("Cannot multiply two matrices if the "
+					+ "column count of the first does not equal the row count of the "
+					+ "second.");
+		
+		if(dest.getRowCount() != this.rows || dest.getColCount() != factor.getColCount())
+			throw new IllegalArgumentException("Destination matrix must have as many rows as the "
+					+ "first factor and as many columns as the second.");
+		
+		Blas.spmm(rows, factor.getColCount(), 1.0, rowStarts, columns, values,
+				factor.getData(), factor.getOffset(), factor.getStride(),
+				0.0, dest.getData(), dest.getOffset(), dest.getStride());
+		
+	}
+	
+	/**
+	 * Zeroes every entry of the given dense matrix that lies outside the pattern of this
+	 * matrix, and copies the entries inside it into this matrix. Afterwards the two hold
+	 * the same matrix.
+	 * @param dense
+	 */
+	public void maskAndCopyFrom(Matrix dense) {
+		
+		if(dense.getRowCount() != rows || dense.getColCount() != cols)
+			throw new IllegalArgumentException("Cannot copy between matrices of unequal size.");
+		
+		double[] data = dense.getData();
+		
+		for(int r = 0; r < rows; r++) {
+			
+			int rowStart = dense.getOffset() + r * dense.getStride();
+			int next = 0;
+			
+			for(int i = rowStarts[r]; i < rowStarts[r + 1]; i++) {
+				Arrays.fill(data, rowStart + next, rowStart + columns[i], 0.0);
+				values[i] = data[rowStart + columns[i]];
+				next = columns[i] + 1;
+			}
+			
+			Arrays.fill(data, rowStart + next, rowStart + cols, 0.0);
+			
+		}
+		
+	}
+	
+	/**
+	 * Computes M = alpha * x * y^T + M over the stored entries of this matrix only, writing
+	 * each updated entry into the given dense matrix as well. The entries outside the
+	 * pattern are left alone in both, so the update takes time proportional to the number
+	 * of stored entries.
+	 * @param alpha
+	 * @param x
+	 * @param y
+	 * @param dense
+	 */
+	public void rank1Update(double alpha, Vector x, Vector y, Matrix dense) {
+		
+		if(x.size() != rows || y.size() != cols)
+			throw new IllegalArgumentException("Outer product must have the same dimensions as the matrix.");
+		
+		if(dense.getRowCount() != rows || dense.getColCount() != cols)
+			throw new IllegalArgumentException("Cannot copy between matrices of unequal size.");
+		
+		double[] xData = x.getData();
+		double[] yData = y.getData();
+		double[] data = dense.getData();
+		
+		for(int r = 0; r < rows; r++) {
+			
+			double scale = alpha * xData[r];
+			int rowStart = dense.getOffset() + r * dense.getStride();
+			
+			for(int i = rowStarts[r]; i < rowStarts[r + 1]; i++) {
+				values[i] += scale * yData[columns[i]];
+				data[rowStart + columns[i]] = values[i];
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Zeroes every entry outside the pattern of this matrix in the row-major float matrix
+	 * of the same shape stored in data, starting at offset, with rows stride entries apart.
+	 * The entries inside the pattern are left alone.
+	 * @param data
+	 * @param offset
+	 * @param stride
+	 */
+	public void zeroOutside(float[] data, int offset, int stride) {
+		
+		for(int r = 0; r < rows; r++) {
+			
+			int rowStart = offset + r * stride;
+			int next = 0;
+			
+			for(int i = rowStarts[r]; i < rowStarts[r + 1]; i++) {
+				Arrays.fill(data, rowStart + next, rowStart + columns[i], 0f);
+				next = columns[i] + 1;
+			}
+			
+			Arrays.fill(data, rowStart + next, rowStart + cols, 0f);
+			
+		}
+		
+	}
+	
+	/**
+	 * Returns a dense copy of this matrix.
+	 * @return dense matrix
+	 */
+	public Matrix toMatrix() {
+		
+		Matrix dense = new Matrix(rows, cols);
+		double[] data = dense.getData();
+		
+		for(int r = 0; r < rows; r++) {
+			for(int i = rowStarts[r]; i < rowStarts[r + 1]; i++) data[r * cols + columns[i]] = values[i];
+		}
+		
+		return dense;
+		
+	}
+	
+	/**
+	 * Returns a copy of this matrix with its own arrays.
+	 * @return copy
+	 */
+	public SparseMatrix copy() {
+		return new SparseMatrix(rows, cols, rowStarts.clone(), columns.clone(), values.clone());
+	}
+	
+}
@@ -1,7 +1,7 @@
 package linearAlgebra;
 
 import java.util.Arrays;
-import java.util.function.Function;
+import java.util.function.DoubleUnaryOperator;
 
 public class Vector {
 
@@ -22,9 +22,7 @@ private double[] data;
 	 * @param arr
 	 */
 	public Vector(double[] arr) {
-		this.data = new double[arr.length];
-		for(int i = 0; i < arr.length; i++)
-			data[i] = arr[i];
+		this.data = Arrays.copyOf(arr, arr.length);
 	}
 	
 	/**
@@ -54,6 +52,15 @@ private double[] data;
 		return Arrays.copyOf(data, data.length);
 	}
 	
+	/**
+	 * Returns the array backing this vector. Changes made to the returned
+	 * array are reflected in the vector.
+	 * @return backing array
+	 */
+	public double[] getData() {
+		return data;
+	}
+	
 	/**
 	 * Returns the size of the vector.
 	 * @return size
@@ -73,18 +80,56 @@ private double[] data;
 		if(addend.size() != this.size())
 			throw new IllegalArgumentException("Cannot add vectors of different length.");
 		
-		Vector sum = new Vector(addend.size());
+		Vector sum = new Vector(data);
 		
-		for(int i = 0; i < addend.size(); i++) {
-			
-			sum.set(i, this.get(i) + addend.get(i));
-			
-		}
+		Blas.axpy(data.length, 1.0, addend.data, 0, sum.data, 0);
 		
 		return sum;
 		
 	}
 	
+	/**
+	 * Adds the given Vector to the current Vector, overwriting
+	 * the entries of the current Vector with the sum.
+	 * @param addend
+	 */
+	public void addInPlace(Vector addend) {
+		
+		if(addend.size() != this.size())
+			throw new IllegalArgumentException("Cannot add vectors of different length.");
+		
+		Blas.axpy(data.length, 1.0, addend.data, 0, data, 0);
+		
+	}
+	
+	/**
+	 * Adds alpha times the given Vector to the current Vector,
+	 * overwriting the entries of the current Vector with the result.
+	 * @param alpha
+	 * @param x
+	 */
+	public void axpy(double alpha, Vector x) {
+		
+		if(x.size() != this.size())
+			throw new IllegalArgumentException("Cannot add vectors of different length.");
+		
+		Blas.axpy(data.length, alpha, x.data, 0, data, 0);
+		
+	}
+	
+	/**
+	 * Copies the entries of the given Vector into the current Vector.
+	 * @param source
+	 */
+	public void copyFrom(Vector source) {
+		
+		if(source.size() != this.size())
+			throw new IllegalArgumentException("Cannot copy between vectors of different length.");
+		
+		System.arraycopy(source.data, 0, data, 0, data.length);
+		
+	}
+	
 	/**
 	 * Returns a new Vector object equal to the current vector
 	 * after having scaled each of its entries by the given
@@ -94,18 +139,33 @@ private double[] data;
 	 */
 	public Vector scale(double scalingFactor) {
 		
-		Vector scaledVector = new Vector(this.size());
+		Vector scaledVector = new Vector(data);
 		
-		for(int i = 0; i < scaledVector.size(); i++) {
-			
-			scaledVector.set(i, scalingFactor * this.get(i));
-			
-		}
+		Blas.scal(data.length, scalingFactor, scaledVector.data, 0);
 		
 		return scaledVector;
 		
 	}
 	
+	/**
+	 * Scales each entry of the current vector by the given
+	 * scaling factor.
+	 * @param scalingFactor
+	 */
+	public void scaleInPlace(double scalingFactor) {
+		
+		Blas.scal(data.length, scalingFactor, data, 0);
+		
+	}
+	
+	/**
+	 * Sets every entry of the current vector to zero. Unlike scaling by zero, this also
+	 * clears entries that are NaN or infinite.
+	 */
+	public void clear() {
+		Arrays.fill(data, 0.0);
+	}
+	
 	/**
 	 * Returns the magnitude of the vector.
 	 * @return magnitude
@@ -131,15 +191,7 @@ private double[] data;
 		if(this.size() != factor.size()) 
 			throw new IllegalArgumentException("Vectors cannot be dotted unless they are the same length");
 		
-		double dot = 0;
-		
-		for(int i = 0; i < this.size(); i++) {
-			
-			dot += (this.get(i) * factor.get(i));
-			
-		}
-		
-		return dot;
+		return Blas.dot(data.length, data, 0, factor.data, 0);
 		
 	}
 	
@@ -173,18 +225,31 @@ private double[] data;
 	 * @param function
 	 * @return vector after applying function
 	 */
-	public Vector apply(Function<Double, Double> function) {
+	public Vector apply(DoubleUnaryOperator function) {
 		
 		Vector output = new Vector(data.length);
 		
 		for(int i = 0; i < data.length; i++) {
-			output.set(i, function.apply(data[i]));
+			output.data[i] = function.applyAsDouble(data[i]);
 		}
 		
 		return output;
 		
 	}
 	
+	/**
+	 * Applies the given function to every element of the current
+	 * vector, overwriting each element with the result.
+	 * @param function
+	 */
+	public void applyInPlace(DoubleUnaryOperator function) {
+		
+		for(int i = 0; i < data.length; i++) {
+			data[i] = function.applyAsDouble(data[i]);
+		}
+		
+	}
+	
 	public boolean equals(Vector other) {
 		
 		if(this.size() != other.size()) return false;
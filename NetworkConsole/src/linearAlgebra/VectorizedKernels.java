@@ -0,0 +1,319 @@
+package linearAlgebra;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementation of the Blas inner loops built on the jdk.incubator.vector API,
+ * processing as many doubles or floats per instruction as the widest vector registers of
+ * the machine allow. This class is only loaded by Blas when the incubator module has been
+ * added to the running JVM with --add-modules jdk.incubator.vector.
+ * @author sbush
+ *
+ */
+final class VectorizedKernels implements BlasKernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+	
+	//Registers of the same width hold twice as many floats
+	private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+	private static final int FLOAT_LANES = FLOAT_SPECIES.length();
+	
+	//Floats are widened one double register's worth at a time, from registers half as wide
+	private static final VectorSpecies<Float> HALF_FLOAT_SPECIES = 
+			VectorSpecies.of(float.class, VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+	
+	//Bytes are widened to ints from registers a quarter as wide, or from the narrowest
+	//register there is, filling one or more int registers
+	private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Byte> BYTE_SPECIES = 
+			VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, INT_SPECIES.vectorBitSize() / 4)));
+	private static final int BYTE_LANES = BYTE_SPECIES.length();
+	private static final int INT_PARTS = BYTE_LANES / INT_SPECIES.length();
+	
+	@Override
+	public double dot(int n, double[] x, int xOff, double[] y, int yOff) {
+		
+		DoubleVector acc0 = DoubleVector.zero(SPECIES);
+		DoubleVector acc1 = DoubleVector.zero(SPECIES);
+		
+		int i = 0;
+		
+		//Two independent accumulators hide the latency of the fused multiply-add
+		for(; i + 2 * LANES <= n; i += 2 * LANES) {
+			acc0 = DoubleVector.fromArray(SPECIES, x, xOff + i)
+					.fma(DoubleVector.fromArray(SPECIES, y, yOff + i), acc0);
+			acc1 = DoubleVector.fromArray(SPECIES, x, xOff + i + LANES)
+					.fma(DoubleVector.fromArray(SPECIES, y, yOff + i + LANES), acc1);
+		}
+		
+		for(; i + LANES <= n; i += LANES) {
+			acc0 = DoubleVector.fromArray(SPECIES, x, xOff + i)
+					.fma(DoubleVector.fromArray(SPECIES, y, yOff + i), acc0);
+		}
+		
+		double dot = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+		
+		for(; i < n; i++) dot += x[xOff + i] * y[yOff + i];
+		
+		return dot;
+		
+	}
+	
+	@Override
+	public void axpy(int n, double alpha, double[] x, int xOff, double[] y, int yOff) {
+		
+		DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+		
+		int i = 0;
+		
+		for(; i + LANES <= n; i += LANES) {
+			DoubleVector.fromArray(SPECIES, x, xOff + i)
+					.fma(a, DoubleVector.fromArray(SPECIES, y, yOff + i))
+					.intoArray(y, yOff + i);
+		}
+		
+		for(; i < n; i++) y[yOff + i] += alpha * x[xOff + i];
+		
+	}
+	
+	@Override
+	public void scal(int n, double alpha, double[] x, int xOff) {
+		
+		int i = 0;
+		
+		for(; i + LANES <= n; i += LANES) {
+			DoubleVector.fromArray(SPECIES, x, xOff + i)
+					.mul(alpha)
+					.intoArray(x, xOff + i);
+		}
+		
+		for(; i < n; i++) x[xOff + i] *= alpha;
+		
+	}
+	
+	@Override
+	public float dot(int n, float[] x, int xOff, float[] y, int yOff) {
+		
+		FloatVector acc0 = FloatVector.zero(FLOAT_SPECIES);
+		FloatVector acc1 = FloatVector.zero(FLOAT_SPECIES);
+		
+		int i = 0;
+		
+		for(; i + 2 * FLOAT_LANES <= n; i += 2 * FLOAT_LANES) {
+			acc0 = FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i)
+					.fma(FloatVector.fromArray(FLOAT_SPECIES, y, yOff + i), acc0);
+			acc1 = FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i + FLOAT_LANES)
+					.fma(FloatVector.fromArray(FLOAT_SPECIES, y, yOff + i + FLOAT_LANES), acc1);
+		}
+		
+		for(; i + FLOAT_LANES <= n; i += FLOAT_LANES) {
+			acc0 = FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i)
+					.fma(FloatVector.fromArray(FLOAT_SPECIES, y, yOff + i), acc0);
+		}
+		
+		float dot = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+		
+		for(; i < n; i++) dot += x[xOff + i] * y[yOff + i];
+		
+		return dot;
+		
+	}
+	
+	@Override
+	public void axpy(int n, float alpha, float[] x, int xOff, float[] y, int yOff) {
+		
+		FloatVector a = FloatVector.broadcast(FLOAT_SPECIES, alpha);
+		
+		int i = 0;
+		
+		for(; i + FLOAT_LANES <= n; i += FLOAT_LANES) {
+			FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i)
+					.fma(a, FloatVector.fromArray(FLOAT_SPECIES, y, yOff + i))
+					.intoArray(y, yOff + i);
+		}
+		
+		for(; i < n; i++) y[yOff + i] += alpha * x[xOff + i];
+		
+	}
+	
+	@Override
+	public void scal(int n, float alpha, float[] x, int xOff) {
+		
+		int i = 0;
+		
+		for(; i + FLOAT_LANES <= n; i += FLOAT_LANES) {
+			FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i)
+					.mul(alpha)
+					.intoArray(x, xOff + i);
+		}
+		
+		for(; i < n; i++) x[xOff + i] *= alpha;
+		
+	}
+	
+	@Override
+	public double dotWide(int n, float[] x, int xOff, float[] y, int yOff) {
+		
+		DoubleVector acc0 = DoubleVector.zero(SPECIES);
+		DoubleVector acc1 = DoubleVector.zero(SPECIES);
+		
+		int i = 0;
+		
+		for(; i + 2 * LANES <= n; i += 2 * LANES) {
+			acc0 = widen(x, xOff + i).fma(widen(y, yOff + i), acc0);
+			acc1 = widen(x, xOff + i + LANES).fma(widen(y, yOff + i + LANES), acc1);
+		}
+		
+		for(; i + LANES <= n; i += LANES) {
+			acc0 = widen(x, xOff + i).fma(widen(y, yOff + i), acc0);
+		}
+		
+		double dot = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+		
+		for(; i < n; i++) dot += (double) x[xOff + i] * y[yOff + i];
+		
+		return dot;
+		
+	}
+	
+	@Override
+	public void axpyWide(int n, double alpha, float[] x, int xOff, double[] y, int yOff) {
+		
+		DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+		
+		int i = 0;
+		
+		for(; i + LANES <= n; i += LANES) {
+			widen(x, xOff + i)
+					.fma(a, DoubleVector.fromArray(SPECIES, y, yOff + i))
+					.intoArray(y, yOff + i);
+		}
+		
+		for(; i < n; i++) y[yOff + i] += alpha * x[xOff + i];
+		
+	}
+	
+	@Override
+	public int dot(int n, byte[] x, int xOff, byte[] y, int yOff) {
+		
+		IntVector acc = IntVector.zero(INT_SPECIES);
+		
+		int i = 0;
+		
+		for(; i + BYTE_LANES <= n; i += BYTE_LANES) {
+			
+			ByteVector xBytes = ByteVector.fromArray(BYTE_SPECIES, x, xOff + i);
+			ByteVector yBytes = ByteVector.fromArray(BYTE_SPECIES, y, yOff + i);
+			
+			for(int part = 0; part < INT_PARTS; part++) {
+				acc = acc.add(widen(xBytes, part).mul(widen(yBytes, part)));
+			}
+			
+		}
+		
+		int dot = acc.reduceLanes(VectorOperators.ADD);
+		
+		for(; i < n; i++) dot += x[xOff + i] * y[yOff + i];
+		
+		return dot;
+		
+	}
+	
+	@Override
+	public void dot4(int n, byte[] x, int xOff, byte[] a, int aOff, int lda, int[] y, int yOff) {
+		
+		IntVector acc0 = IntVector.zero(INT_SPECIES);
+		IntVector acc1 = IntVector.zero(INT_SPECIES);
+		IntVector acc2 = IntVector.zero(INT_SPECIES);
+		IntVector acc3 = IntVector.zero(INT_SPECIES);
+		
+		int i = 0;
+		
+		for(; i + BYTE_LANES <= n; i += BYTE_LANES) {
+			
+			ByteVector xBytes = ByteVector.fromArray(BYTE_SPECIES, x, xOff + i);
+			ByteVector a0 = ByteVector.fromArray(BYTE_SPECIES, a, aOff + i);
+			ByteVector a1 = ByteVector.fromArray(BYTE_SPECIES, a, aOff + lda + i);
+			ByteVector a2 = ByteVector.fromArray(BYTE_SPECIES, a, aOff + 2 * lda + i);
+			ByteVector a3 = ByteVector.fromArray(BYTE_SPECIES, a, aOff + 3 * lda + i);
+			
+			for(int part = 0; part < INT_PARTS; part++) {
+				IntVector xInts = widen(xBytes, part);
+				acc0 = acc0.add(xInts.mul(widen(a0, part)));
+				acc1 = acc1.add(xInts.mul(widen(a1, part)));
+				acc2 = acc2.add(xInts.mul(widen(a2, part)));
+				acc3 = acc3.add(xInts.mul(widen(a3, part)));
+			}
+			
+		}
+		
+		int s0 = acc0.reduceLanes(VectorOperators.ADD);
+		int s1 = acc1.reduceLanes(VectorOperators.ADD);
+		int s2 = acc2.reduceLanes(VectorOperators.ADD);
+		int s3 = acc3.reduceLanes(VectorOperators.ADD);
+		
+		for(; i < n; i++) {
+			int xi = x[xOff + i];
+			s0 += xi * a[aOff + i];
+			s1 += xi * a[aOff + lda + i];
+			s2 += xi * a[aOff + 2 * lda + i];
+			s3 += xi * a[aOff + 3 * lda + i];
+		}
+		
+		y[yOff] = s0;
+		y[yOff + 1] = s1;
+		y[yOff + 2] = s2;
+		y[yOff + 3] = s3;
+		
+	}
+	
+	/**
+	 * Loads LANES floats starting at the given offset and converts them to doubles.
+	 */
+	private static DoubleVector widen(float[] x, int offset) {
+		return (DoubleVector) FloatVector.fromArray(HALF_FLOAT_SPECIES, x, offset)
+				.convertShape(VectorOperators.F2D, SPECIES, 0);
+	}
+	
+	@Override
+	public double dotSparse(int n, double[] values, int[] indices, int off, double[] x, int xOff) {
+		
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		
+		int i = off;
+		int end = off + n;
+		
+		//The entries of x are gathered from the columns of the row's nonzero entries
+		for(; i + LANES <= end; i += LANES) {
+			acc = DoubleVector.fromArray(SPECIES, values, i)
+					.fma(DoubleVector.fromArray(SPECIES, x, xOff, indices, i), acc);
+		}
+		
+		double dot = acc.reduceLanes(VectorOperators.ADD);
+		
+		for(; i < end; i++) dot += values[i] * x[xOff + indices[i]];
+		
+		return dot;
+		
+	}
+	
+	/**
+	 * Converts the given part of a vector of bytes to ints, one int register's worth.
+	 */
+	private static IntVector widen(ByteVector bytes, int part) {
+		return (IntVector) bytes.convertShape(VectorOperators.B2I, INT_SPECIES, part);
+	}
+	
+	@Override
+	public String toString() {
+		return "SIMD (" + SPECIES.vectorBitSize() + "-bit)";
+	}
+	
+}
@@ -1,9 +1,13 @@
 package main;
 
+import java.util.Arrays;
 import java.util.InputMismatchException;
 import java.util.Random;
 import network.ActivationFunction;
+import network.LossFunction;
 import network.Network;
+import network.Precision;
+import network.WeightInitialization;
 
 /**
  * The state of the program responsible for the creation of new neural networks in memory.
@@ -27,7 +31,14 @@ public class CreateState implements State {
 		
 		populateActivationFunction(funcs, main);
 		
-		main.loadedNetwork = new Network(null, layerSizes, funcs, new Random());
+		LossFunction loss = retrieveLossFunctionFromUser(funcs[funcs.length - 1], main);
+		
+		WeightInitialization[] initializations = retrieveWeightInitializationsFromUser(funcs, main);
+		
+		Precision precision = retrievePrecisionFromUser(main);
+		
+		main.loadedNetwork = new Network(null, layerSizes, funcs, loss, initializations, new Random());
+		main.loadedNetwork.setPrecision(precision);
 		main.loadedNetworkName = null;
 		main.loadedNetworkUnsavedChanges = true;
 		
@@ -126,7 +137,8 @@ public class CreateState implements State {
 		System.out.println("4. Tanh");
 		System.out.println("5. Step function");
 		System.out.println("6. Identity (activation function does not change a neuron's value)");
-		System.out.println("Type 1-6 to select one of these options.");
+		System.out.println("7. Softmax (output layer only, trained with cross-entropy loss)");
+		System.out.println("Type 1-7 to select one of these options.");
 		
 		for(int i = 0; i < funcs.length; i++) {
 			
@@ -183,8 +195,18 @@ public class CreateState implements State {
 					funcs[i] = ActivationFunction.IDENTITY;
 					break;
 					
+				case 7:
+					if(i == funcs.length - 1) {
+						retrieved = true;
+						funcs[i] = ActivationFunction.SOFTMAX;
+					} else {
+						System.out.println("Softmax can only be used on the output layer.");
+						System.out.println("Please try again:");
+					}
+					break;
+					
 				default:
-					System.out.println("You must choose a number from 1 to 6.");
+					System.out.println("You must choose a number from 1 to 7.");
 					System.out.println("Please try again:");
 				
 				}
@@ -197,4 +219,138 @@ public class CreateState implements State {
 		
 	}
 	
+	/**
+	 * Returns the loss function for a network with the given output activation. Softmax
+	 * outputs are always trained with cross-entropy, sigmoid outputs can use either loss,
+	 * and every other output uses squared error.
+	 */
+	private LossFunction retrieveLossFunctionFromUser(ActivationFunction outputFunction, Main main) {
+		
+		if(outputFunction == ActivationFunction.SOFTMAX) return LossFunction.CROSS_ENTROPY;
+		if(outputFunction != ActivationFunction.SIGMOID) return LossFunction.SQUARED_ERROR;
+		
+		System.out.println("Select a loss function (1 - Squared error, 2 - Cross-entropy):");
+		
+		while(true) {
+			
+			int choice;
+			
+			try {
+				
+				choice = main.scanner.nextInt();
+				
+			} catch (InputMismatchException e) {
+				
+				main.scanner.nextLine();
+				System.out.println("Input cannot be parsed. Make sure you have typed in a positive integer.");
+				System.out.println("Please try again:");
+				continue;
+				
+			}
+			
+			main.scanner.nextLine();
+			
+			if(choice == 1) return LossFunction.SQUARED_ERROR;
+			if(choice == 2) return LossFunction.CROSS_ENTROPY;
+			
+			System.out.println("You must choose either 1 or 2.");
+			System.out.println("Please try again:");
+			
+		}
+		
+	}
+	
+	/**
+	 * Returns the weight initialization scheme for each layer. By default each layer gets
+	 * the scheme recommended for its activation function; otherwise one scheme is used for
+	 * every layer.
+	 */
+	private WeightInitialization[] retrieveWeightInitializationsFromUser(ActivationFunction[] funcs, Main main) {
+		
+		System.out.println("Select a weight initialization scheme:");
+		System.out.println("1. Recommended for each layer's activation function (He for ReLU, Xavier for sigmoid, tanh and softmax, LeCun otherwise)");
+		System.out.println("2. Legacy uniform");
+		System.out.println("3. Xavier");
+		System.out.println("4. He");
+		System.out.println("5. LeCun");
+		System.out.println("6. Orthogonal");
+		
+		WeightInitialization[] initializations = new WeightInitialization[funcs.length];
+		
+		while(true) {
+			
+			int choice;
+			
+			try {
+				
+				choice = main.scanner.nextInt();
+				
+			} catch (InputMismatchException e) {
+				
+				main.scanner.nextLine();
+				System.out.println("Input cannot be parsed. Make sure you have typed in a positive integer.");
+				System.out.println("Please try again:");
+				continue;
+				
+			}
+			
+			main.scanner.nextLine();
+			
+			if(choice == 1) {
+				for(int i = 0; i < funcs.length; i++) initializations[i] = WeightInitialization.defaultFor(funcs[i]);
+				return initializations;
+			}
+			
+			if(2 <= choice && choice <= 6) {
+				Arrays.fill(initializations, WeightInitialization.values()[choice - 2]);
+				return initializations;
+			}
+			
+			System.out.println("You must choose a number from 1 to 6.");
+			System.out.println("Please try again:");
+			
+		}
+		
+	}
+	
+	/**
+	 * Returns the precision the network will be stored and trained in.
+	 */
+	private Precision retrievePrecisionFromUser(Main main) {
+		
+		System.out.println("Select a precision:");
+		System.out.println("1. Double");
+		System.out.println("2. Float (half the memory and file size)");
+		System.out.println("3. Mixed (float weights and activations, double master weights and sums)");
+		
+		while(true) {
+			
+			int choice;
+			
+			try {
+				
+				choice = main.scanner.nextInt();
+				
+			} catch (InputMismatchException e) {
+				
+				main.scanner.nextLine();
+				System.out.println("Input cannot be parsed. Make sure you have typed in a positive integer.");
+				System.out.println("Please try again:");
+				continue;
+				
+			}
+			
+			main.scanner.nextLine();
+			
+			if(choice == 1) return Precision.DOUBLE;
+			if(choice == 2) return Precision.FLOAT;
+			if(choice == 3) return Precision.MIXED;
+			
+			System.out.println("You must choose a number from 1 to 3.");
+			System.out.println("Please try again:");
+			
+		}
+		
+	}
+	
 }
\ No newline at end of file
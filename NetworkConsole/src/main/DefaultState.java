@@ -52,6 +52,18 @@ public class DefaultState implements State {
 			eval(main);
 			return;
 			
+		case "quantize":
+			quantize(main);
+			return;
+			
+		case "testquantized":
+			testQuantized(main);
+			return;
+			
+		case "prune":
+			prune(main);
+			return;
+			
 		case "save":
 			save(main);
 			return;
@@ -144,6 +156,20 @@ public class DefaultState implements State {
 		else System.out.println("No network loaded.\n");
 	}
 	
+	private void quantize(Main main) {
+		if(main.loadedNetwork != null) main.state = main.quantizeState;
+		else System.out.println("No network loaded.\n");
+	}
+	
+	private void testQuantized(Main main) {
+		main.state = main.testQuantizedState;
+	}
+	
+	private void prune(Main main) {
+		if(main.loadedNetwork != null) main.state = main.pruneState;
+		else System.out.println("No network loaded.\n");
+	}
+	
 	private void save(Main main) {
 		if(main.loadedNetwork != null) main.state = main.saveState;
 		else System.out.println("No network loaded.\n");
@@ -74,9 +74,7 @@ public class EvalState implements State {
 			for(int i = 0; i < examples.length; i++) {
 				byte[] pixels = NetworkFileUtils.getPixels(DataSet.test, examples[i]);
 				images[i] = new ImageIcon(scale(NetworkFileUtils.render(pixels), 7));
-				answers[i] = main.loadedNetwork.forwardprop(NetworkFileUtils.getInputVector(DataSet.test, examples[i]))
-						.output()
-						.indexOfMax();
+				answers[i] = main.loadedNetwork.classify(NetworkFileUtils.getInputVector(DataSet.test, examples[i]));
 			}
 			
 			pictureFrame.setIcon(images[0]);
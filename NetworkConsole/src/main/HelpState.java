@@ -20,6 +20,9 @@ public class HelpState implements State {
 		System.out.println("train: train the loaded neural network");
 		System.out.println("test: test the loaded neural network");
 		System.out.println("eval: load ten examples from the dataset and the network's evaluation of them.");
+		System.out.println("quantize: convert the loaded network to 8 bit integers for fast inference and compare its accuracy");
+		System.out.println("testquantized: load a quantized network saved by \"quantize\" and test it");
+		System.out.println("prune: zero the smallest weights of the loaded network so it runs on sparse kernels, then optionally fine-tune it");
 		System.out.println("save: save the currently loaded network to file");
 		System.out.println("delete: delete a network");
 		System.out.println("quit: quit the program");
@@ -39,6 +39,17 @@ public class InfoState implements State {
 		}
 		System.out.println(funcs[funcs.length - 1].toString() + "]");
 		
+		System.out.println("Loss function: " + network.lossFunction());
+		System.out.println("Weight initialization for each layer: " + Arrays.toString(network.weightInitializations()));
+		System.out.println("Precision: " + network.precision());
+		
+		if(network.isPruned()) {
+			double[] densities = network.weightDensities();
+			String[] percentages = new String[densities.length];
+			for(int i = 0; i < densities.length; i++) percentages[i] = String.format("%.1f%%", 100 * densities[i]);
+			System.out.println("Weights remaining in each layer: " + Arrays.toString(percentages));
+		}
+		
 		System.out.println();
 		
 		main.state = main.defaultState;
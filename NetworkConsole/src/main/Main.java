@@ -32,6 +32,9 @@ public class Main {
 	TrainState trainState;
 	TestState testState;
 	EvalState evalState;
+	QuantizeState quantizeState;
+	TestQuantizedState testQuantizedState;
+	PruneState pruneState;
 	SaveState saveState;
 	DeleteState deleteState;
 	
@@ -50,6 +53,9 @@ public class Main {
 		trainState = new TrainState();
 		testState = new TestState();
 		evalState = new EvalState();
+		quantizeState = new QuantizeState();
+		testQuantizedState = new TestQuantizedState();
+		pruneState = new PruneState();
 		saveState = new SaveState();
 		deleteState = new DeleteState();
 		
@@ -0,0 +1,93 @@
+package main;
+
+import java.util.Optional;
+
+import network.Classifier;
+import network.DataSet;
+import network.EvaluationReport;
+import network.Evaluator;
+import network.ExampleSource;
+import network.FloatNetwork;
+import network.Precision;
+
+/**
+ * The state in which the smallest weights of the loaded network are pruned away. The
+ * network is scored on the testing dataset before and after pruning, and can then be
+ * fine-tuned, with the pruned weights held at zero, to recover the accuracy lost.
+ * @author sbush
+ *
+ */
+public class PruneState implements State {
+
+	//Number of test examples each thread runs through the network at once
+	private static final int EVALUATION_BATCH_SIZE = 64;
+	
+	public void run(Main main) {
+		
+		Optional<? extends ExampleSource> testSet = ExampleSource.open(DataSet.test);
+		
+		if(testSet.isEmpty()) {
+			System.out.println();
+			main.state = main.defaultState;
+			return;
+		}
+		
+		int[] layerSizes = main.loadedNetwork.layerSizes();
+		double[] densities = main.loadedNetwork.weightDensities();
+		double[] sparsities = new double[layerSizes.length - 1];
+		
+		for(int i = 0; i < sparsities.length; i++) {
+			
+			System.out.printf("Enter the percentage of weights to prune from layer %d (%d -> %d) (Default - 90, currently pruned - %.1f):\n", 
+					i + 1, layerSizes[i], layerSizes[i+1], 100 * (1 - densities[i]));
+			
+			sparsities[i] = Math.max(0, Math.min(100, main.scanner.nextDouble())) / 100;
+			
+		}
+		
+		main.scanner.nextLine();
+		
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		
+		EvaluationReport before = Evaluator.evaluate(classifier(main), testSet.get(), numThreads, EVALUATION_BATCH_SIZE);
+		
+		main.loadedNetwork.prune(sparsities);
+		main.loadedNetworkUnsavedChanges = true;
+		
+		EvaluationReport after = Evaluator.evaluate(classifier(main), testSet.get(), numThreads, EVALUATION_BATCH_SIZE);
+		
+		System.out.println();
+		System.out.println("Layer  Weights remaining");
+		
+		densities = main.loadedNetwork.weightDensities();
+		for(int i = 0; i < densities.length; i++) System.out.printf("%5d  %16.1f%%\n", i + 1, 100 * densities[i]);
+		
+		System.out.println();
+		System.out.printf("Accuracy before pruning: %.3f%%\n", 100 * before.accuracy());
+		System.out.printf("Accuracy after pruning:  %.3f%%\n", 100 * after.accuracy());
+		System.out.println();
+		
+		System.out.println("Fine-tune the pruned network? (Y/N)");
+		
+		String input = main.scanner.nextLine();
+		
+		while(!input.toLowerCase().equals("y") && !input.toLowerCase().equals("n")) {
+			System.out.println("Please type 'Y' to train the pruned network or 'N' to keep it as it is.");
+			input = main.scanner.nextLine();
+		}
+		
+		System.out.println();
+		
+		main.state = input.toLowerCase().equals("y") ? main.trainState : main.defaultState;
+		
+	}
+	
+	/**
+	 * Returns the engine the loaded network is scored with. Single and mixed precision
+	 * networks are scored with the engine they are trained with.
+	 */
+	private Classifier classifier(Main main) {
+		return (main.loadedNetwork.precision() != Precision.DOUBLE) ? new FloatNetwork(main.loadedNetwork) : main.loadedNetwork;
+	}
+	
+}
@@ -0,0 +1,244 @@
+package main;
+
+import java.io.File;
+import java.util.Optional;
+import java.util.Random;
+
+import linearAlgebra.Matrix;
+
+import network.Classifier;
+import network.DataSet;
+import network.EvaluationReport;
+import network.Evaluator;
+import network.ExampleSource;
+import network.FloatNetwork;
+import network.NetworkFileUtils;
+import network.Precision;
+import network.QuantizedNetwork;
+
+/**
+ * The state in which the loaded network is converted into an 8 bit integer network for
+ * inference. Both networks are scored on the testing dataset so the accuracy lost to
+ * quantization can be checked before the quantized network is saved.
+ * @author sbush
+ *
+ */
+public class QuantizeState implements State {
+
+	//Number of test examples each thread runs through the networks at once
+	private static final int EVALUATION_BATCH_SIZE = 64;
+	
+	//Number of test examples run through each network before it is timed
+	private static final int WARMUP_SIZE = 2000;
+	
+	//Number of training examples calibrated on when no number is entered
+	private static final int DEFAULT_CALIBRATION_SIZE = 1000;
+	
+	public void run(Main main) {
+		
+		Optional<? extends ExampleSource> trainingSet = ExampleSource.open(DataSet.train);
+		Optional<? extends ExampleSource> testSet = ExampleSource.open(DataSet.test);
+		
+		if(trainingSet.isEmpty() || testSet.isEmpty()) {
+			System.out.println();
+			main.state = main.defaultState;
+			return;
+		}
+		
+		System.out.printf("Enter number of training examples to calibrate on (Default - %d):\n", DEFAULT_CALIBRATION_SIZE);
+		int calibrationSize = Math.min(trainingSet.get().size(), readCalibrationSize(main));
+		
+		System.out.println("Quantizing network...");
+		
+		long start = System.nanoTime();
+		QuantizedNetwork quantized = QuantizedNetwork.quantize(main.loadedNetwork, trainingSet.get(),
+				sample(trainingSet.get().size(), calibrationSize, new Random()));
+		System.out.printf("Quantization complete in %.1f ms\n", (System.nanoTime() - start) / 1e6);
+		System.out.println();
+		
+		//Single and mixed precision networks are compared with the engine they are trained with
+		Classifier original = (main.loadedNetwork.precision() != Precision.DOUBLE)
+				? new FloatNetwork(main.loadedNetwork) : main.loadedNetwork;
+		
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		
+		//The quantized network has never run before, so both networks are first given a few
+		//batches to compile before their throughput is measured
+		int[] warmup = sample(testSet.get().size(), Math.min(WARMUP_SIZE, testSet.get().size()), new Random());
+		Evaluator.evaluate(original, testSet.get(), warmup, numThreads, EVALUATION_BATCH_SIZE);
+		Evaluator.evaluate(quantized, testSet.get(), warmup, numThreads, EVALUATION_BATCH_SIZE);
+		
+		EvaluationReport originalReport = Evaluator.evaluate(original, testSet.get(), numThreads, EVALUATION_BATCH_SIZE);
+		EvaluationReport quantizedReport = Evaluator.evaluate(quantized, testSet.get(), numThreads, EVALUATION_BATCH_SIZE);
+		
+		System.out.println("Network    Accuracy  Examples/sec  Parameter bytes");
+		System.out.printf("Original   %7.3f%%  %12.0f  %15d\n", 100 * originalReport.accuracy(),
+				originalReport.throughput(), originalParameterBytes(main));
+		System.out.printf("Quantized  %7.3f%%  %12.0f  %15d\n", 100 * quantizedReport.accuracy(),
+				quantizedReport.throughput(), quantizedParameterBytes(main));
+		System.out.printf("Accuracy change: %+.3f percentage points\n",
+				100 * (quantizedReport.accuracy() - originalReport.accuracy()));
+		System.out.println();
+		
+		if(main.loadedNetworkName == null) {
+			System.out.println("Quantized networks are saved under the name of the network they come from.");
+			System.out.println("Save the loaded network, then quantize it again to keep the quantized network.");
+			System.out.println();
+			main.state = main.defaultState;
+			return;
+		}
+		
+		System.out.println("Save the quantized network? (Y/N)");
+		
+		String input = main.scanner.nextLine();
+		
+		while(!input.toLowerCase().equals("y") && !input.toLowerCase().equals("n")) {
+			System.out.println("Please type 'Y' to save the quantized network or 'N' to discard it.");
+			input = main.scanner.nextLine();
+		}
+		
+		if(input.toLowerCase().equals("y") && NetworkFileUtils.saveQuantizedNetworkToFile(quantized, main.loadedNetworkName)) {
+			File file = NetworkFileUtils.quantizedFileFromName(main.loadedNetworkName);
+			System.out.printf("Quantized network saved to %s (%d bytes)\n", file.getPath(), file.length());
+			checkSavedNetwork(quantized, file, testSet.get(), warmup);
+		}
+		
+		System.out.println();
+		
+		main.state = main.defaultState;
+		
+	}
+	
+	/**
+	 * Reads the number of calibration examples, using the default for a blank line and
+	 * asking again until a whole number of at least one is entered.
+	 */
+	private int readCalibrationSize(Main main) {
+		
+		String input = main.scanner.nextLine().trim();
+		
+		while(true) {
+			
+			if(input.isEmpty()) return DEFAULT_CALIBRATION_SIZE;
+			
+			try {
+				int size = Integer.parseInt(input);
+				if(size >= 1) return size;
+			} catch (NumberFormatException e) {
+				//Asked for again below
+			}
+			
+			System.out.println("Please enter a whole number of at least 1, or nothing for the default.");
+			input = main.scanner.nextLine().trim();
+			
+		}
+		
+	}
+	
+	/**
+	 * Loads the quantized network back from the file it was just saved to and checks that,
+	 * classifying the given test examples one at a time, it agrees with the network it was
+	 * saved from classifying them as a batch.
+	 */
+	private void checkSavedNetwork(QuantizedNetwork quantized, File file, ExampleSource testSet, int[] indices) {
+		
+		Optional<QuantizedNetwork> reloaded = NetworkFileUtils.loadQuantizedNetworkFromFile(file.getPath());
+		
+		if(reloaded.isEmpty()) {
+			System.out.println("The saved quantized network could not be loaded back.");
+			return;
+		}
+		
+		Matrix inputs = new Matrix(ExampleSource.PIXELS, indices.length);
+		double[][] examples = new double[indices.length][ExampleSource.PIXELS];
+		
+		for(int example = 0; example < indices.length; example++) {
+			testSet.readInput(indices[example], examples[example], 0);
+			for(int r = 0; r < ExampleSource.PIXELS; r++) inputs.set(r, example, examples[example][r]);
+		}
+		
+		int[] classes = new int[indices.length];
+		quantized.classifyBatch(inputs, classes);
+		
+		int agreed = 0;
+		for(int example = 0; example < indices.length; example++) {
+			if(reloaded.get().classify(examples[example]) == classes[example]) agreed++;
+		}
+		
+		System.out.printf("Reloaded network agrees with the converted one on %d / %d test examples\n", agreed, indices.length);
+		
+	}
+	
+	/**
+	 * Returns count distinct indices below size, chosen at random.
+	 */
+	private int[] sample(int size, int count, Random rand) {
+		
+		int[] indices = new int[size];
+		for(int i = 0; i < size; i++) indices[i] = i;
+		
+		//The first count entries of a partial Fisher-Yates shuffle
+		for(int i = 0; i < count; i++) {
+			int j = i + rand.nextInt(size - i);
+			int temp = indices[i];
+			indices[i] = indices[j];
+			indices[j] = temp;
+		}
+		
+		int[] sample = new int[count];
+		System.arraycopy(indices, 0, sample, 0, count);
+		
+		return sample;
+		
+	}
+	
+	/**
+	 * Returns the number of bytes the loaded network's weights and biases take up in its
+	 * save file.
+	 */
+	private long originalParameterBytes(Main main) {
+		
+		long bytesPerValue = (main.loadedNetwork.precision() == Precision.FLOAT) ? 4 : 8;
+		
+		return bytesPerValue * (numWeights(main) + numNeurons(main));
+		
+	}
+	
+	/**
+	 * Returns the number of bytes the quantized weights, scales and biases take up in its
+	 * save file: a byte per weight, two floats per neuron and a float per layer.
+	 */
+	private long quantizedParameterBytes(Main main) {
+		
+		int[] sizes = main.loadedNetwork.layerSizes();
+		
+		return numWeights(main) + 8 * numNeurons(main) + 4 * (sizes.length - 1);
+		
+	}
+	
+	private long numWeights(Main main) {
+		
+		int[] sizes = main.loadedNetwork.layerSizes();
+		
+		long weights = 0;
+		for(int i = 1; i < sizes.length; i++) weights += (long) sizes[i-1] * sizes[i];
+		
+		return weights;
+		
+	}
+	
+	/**
+	 * Returns the number of neurons after the input layer, each of which has a bias.
+	 */
+	private long numNeurons(Main main) {
+		
+		int[] sizes = main.loadedNetwork.layerSizes();
+		
+		long neurons = 0;
+		for(int i = 1; i < sizes.length; i++) neurons += sizes[i];
+		
+		return neurons;
+		
+	}
+	
+}
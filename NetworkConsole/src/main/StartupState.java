@@ -1,5 +1,7 @@
 package main;
 
+import linearAlgebra.Blas;
+
 /**
  * The state entered when the program launches, which displays the welcome message.
  * @author sbush
@@ -12,6 +14,7 @@ public class StartupState implements State {
 		
 		System.out.println("Welcome to the Neural Network Manager.");
 		System.out.println("type help for a list of commands");
+		System.out.println("Linear algebra kernels: " + Blas.kernels());
 		System.out.println();
 		
 		main.state = main.defaultState;
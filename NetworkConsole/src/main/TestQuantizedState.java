@@ -0,0 +1,65 @@
+package main;
+
+import java.io.File;
+import java.util.Optional;
+
+import network.DataSet;
+import network.EvaluationReport;
+import network.Evaluator;
+import network.ExampleSource;
+import network.NetworkFileUtils;
+import network.QuantizedNetwork;
+
+/**
+ * The state in which a saved 8 bit integer network is loaded from its .q8 file and tested,
+ * exactly as it would be deployed. No full precision network needs to be loaded.
+ * @author sbush
+ *
+ */
+public class TestQuantizedState implements State {
+
+	//Number of test examples each thread runs through the network at once
+	private static final int EVALUATION_BATCH_SIZE = 64;
+	
+	//Number of test examples classified one at a time to measure latency
+	private static final int LATENCY_SAMPLES = 1000;
+	
+	public void run(Main main) {
+		
+		System.out.println("Enter the name of the quantized network you want to test:");
+		
+		String name = main.scanner.nextLine();
+		File file = NetworkFileUtils.quantizedFileFromName(name);
+		
+		if(!file.exists()) {
+			System.out.println("No such quantized network exists.");
+			System.out.println("Load a network and type \"quantize\" to create one.");
+			System.out.println();
+			main.state = main.defaultState;
+			return;
+		}
+		
+		Optional<QuantizedNetwork> network = NetworkFileUtils.loadQuantizedNetworkFromFile(file.getPath());
+		Optional<? extends ExampleSource> testSet = ExampleSource.open(DataSet.test);
+		
+		if(network.isEmpty() || testSet.isEmpty()) {
+			System.out.println();
+			main.state = main.defaultState;
+			return;
+		}
+		
+		System.out.println("Testing quantized network");
+		System.out.println("===========");
+		
+		EvaluationReport report = Evaluator.evaluate(network.get(), testSet.get(), 
+				Runtime.getRuntime().availableProcessors(), EVALUATION_BATCH_SIZE, LATENCY_SAMPLES);
+		
+		System.out.println("Testing complete");
+		System.out.print(report);
+		System.out.println();
+		
+		main.state = main.defaultState;
+		
+	}
+	
+}
@@ -1,36 +1,45 @@
 package main;
 
-import linearAlgebra.Vector;
+import java.util.Optional;
+
+import network.Classifier;
 import network.DataSet;
-import network.NetworkFileUtils;
+import network.EvaluationReport;
+import network.Evaluator;
+import network.ExampleSource;
+import network.FloatNetwork;
+import network.Precision;
 
 public class TestState implements State {
 	
+	//Number of test examples each thread runs through the network at once
+	private static final int EVALUATION_BATCH_SIZE = 64;
+	
+	//Number of test examples classified one at a time to measure latency
+	private static final int LATENCY_SAMPLES = 1000;
+	
 	public void run(Main main) {
 		
+		Optional<? extends ExampleSource> testSet = ExampleSource.open(DataSet.test);
+		
+		if(testSet.isEmpty()) {
+			System.out.println();
+			main.state = main.defaultState;
+			return;
+		}
+		
 		System.out.println("Testing network");
 		System.out.println("===========");
 		
-		int numCorrect = 0;
-		int numTotal = 10_000;
-		
-		for(int i = 0; i < 10_000; i++) {
-			
-			if(i % 1000 == 0) System.out.print("-");
-			
-			Vector pixels = NetworkFileUtils.getInputVector(DataSet.test, i);
-			int answer = NetworkFileUtils.getAnswer(DataSet.test, i);
-			
-			Vector[] activations = main.loadedNetwork.forwardprop(pixels).activations();
-			int output = activations[activations.length - 1].indexOfMax();
-			
-			if(output == answer) numCorrect++;
-			
-		}
+		//Single and mixed precision networks are tested with the engine they are trained with
+		Classifier classifier = (main.loadedNetwork.precision() != Precision.DOUBLE) 
+				? new FloatNetwork(main.loadedNetwork) : main.loadedNetwork;
+		
+		EvaluationReport report = Evaluator.evaluate(classifier, testSet.get(), 
+				Runtime.getRuntime().availableProcessors(), EVALUATION_BATCH_SIZE, LATENCY_SAMPLES);
 		
-		System.out.println("-");
 		System.out.println("Testing complete");
-		System.out.printf("%d / 10_000 correct, %f%% accuracy\n", numCorrect, 100 * numCorrect / (double) numTotal);
+		System.out.print(report);
 		System.out.println();
 		
 		main.state = main.defaultState;
@@ -1,79 +1,368 @@
 package main;
 
+import java.util.Optional;
 import java.util.Random;
 
 import linearAlgebra.Vector;
+import network.BatchActivation;
+import network.BatchPipeline;
 import network.DataSet;
-import network.DesiredNetworkUpdate;
-import network.NetworkActivation;
-import network.NetworkFileUtils;
+import network.ExampleSource;
+import network.FloatNetwork;
+import network.GradientAccumulator;
+import network.HogwildTrainer;
+import network.LearningRateSchedule;
+import network.Optimizer;
+import network.ParallelTrainer;
+import network.Precision;
+import network.TrainingController;
+import network.TrainingWorkspace;
 
 public class TrainState implements State {
 	
+	//Number of batch buffers prepared ahead of the trainer, and threads preparing them
+	private static final int PIPELINE_DEPTH = 4;
+	private static final int PIPELINE_WORKERS = 2;
+	
+	//Optimizer hyperparameters
+	private static final double MOMENTUM = 0.9;
+	private static final double RMSPROP_DECAY = 0.9;
+	private static final double ADAM_BETA1 = 0.9;
+	private static final double ADAM_BETA2 = 0.999;
+	
+	//Learning rate schedule hyperparameters
+	private static final int STEP_EPOCHS = 10;
+	private static final int PLATEAU_PATIENCE = 2;
+	private static final double DECAY_FACTOR = 0.5;
+	
 	public void run(Main main) {
 		
 		System.out.println("Enter number of epochs (Default - 30):");
 		int numEpochs = main.scanner.nextInt();
 		
-		System.out.println("Enter batch size (Default - 20):");
-		int batchSize = main.scanner.nextInt();
+		boolean singlePrecision = (main.loadedNetwork.precision() == Precision.FLOAT);
+		boolean mixedPrecision = (main.loadedNetwork.precision() == Precision.MIXED);
+		int numThreads = 1;
+		
+		if(singlePrecision) {
+			System.out.println("Single precision networks are trained with SGD on one thread.");
+		} else if(mixedPrecision) {
+			System.out.println("Mixed precision networks are trained on one thread.");
+		} else {
+			System.out.printf("Enter number of worker threads (Default - 1, available cores - %d):\n", 
+					Runtime.getRuntime().availableProcessors());
+			numThreads = Math.max(1, main.scanner.nextInt());
+		}
+		
+		boolean asynchronous = false;
+		
+		//Asynchronous workers write straight to the shared weights, so they cannot keep the
+		//pruned weights of a pruned network at zero
+		if(numThreads > 1 && main.loadedNetwork.isPruned()) {
+			System.out.println("Pruned networks are trained with synchronous minibatches.");
+		} else if(numThreads > 1) {
+			System.out.println("Select training mode (1 - Synchronous minibatches, 2 - Asynchronous per-example updates):");
+			asynchronous = (main.scanner.nextInt() == 2);
+		}
+		
+		int batchSize = 1;
+		
+		if(asynchronous) {
+			System.out.println("Asynchronous workers update the weights after every example, so no batch size is needed.");
+		} else {
+			System.out.println("Enter batch size (Default - 20):");
+			batchSize = Math.max(1, main.scanner.nextInt());
+		}
+		
+		//Asynchronous workers apply plain SGD steps straight to the shared weights
+		Optimizer optimizer = Optimizer.sgd(main.loadedNetwork);
+		boolean plainSgd = true;
+		double defaultLearningRate = 3.0;
+		
+		if(!asynchronous && !singlePrecision) {
+			
+			System.out.println("Select an optimizer (Default - 1):");
+			System.out.println("1. SGD");
+			System.out.println("2. SGD with momentum");
+			System.out.println("3. SGD with Nesterov momentum");
+			System.out.println("4. RMSProp");
+			System.out.println("5. Adam");
+			
+			switch(main.scanner.nextInt()) {
+			
+			case 2:
+				optimizer = Optimizer.momentum(main.loadedNetwork, MOMENTUM);
+				plainSgd = false;
+				defaultLearningRate = 0.3;
+				break;
+			
+			case 3:
+				optimizer = Optimizer.nesterov(main.loadedNetwork, MOMENTUM);
+				plainSgd = false;
+				defaultLearningRate = 0.3;
+				break;
+			
+			case 4:
+				optimizer = Optimizer.rmsProp(main.loadedNetwork, RMSPROP_DECAY);
+				plainSgd = false;
+				defaultLearningRate = 0.001;
+				break;
+			
+			case 5:
+				optimizer = Optimizer.adam(main.loadedNetwork, ADAM_BETA1, ADAM_BETA2);
+				plainSgd = false;
+				defaultLearningRate = 0.001;
+				break;
+			
+			default:
+				break;
+				
+			}
+			
+		}
 		
-		System.out.println("Enter learning rate (Default - 3.0):");
+		System.out.println("Enter learning rate (Default - " + defaultLearningRate + "):");
 		double learningRate = main.scanner.nextDouble();
 		
+		System.out.println("Enter number of training examples to hold out for validation (Default - 0, suggested - 5000):");
+		int validationSize = Math.max(0, main.scanner.nextInt());
+		
+		System.out.println("Select a learning rate schedule (Default - 1):");
+		System.out.println("1. Constant");
+		System.out.println("2. Step decay (halve every " + STEP_EPOCHS + " epochs)");
+		System.out.println("3. Cosine decay");
+		System.out.println("4. Decay on plateau (halve after " + PLATEAU_PATIENCE + " epochs without improvement, needs validation)");
+		
+		LearningRateSchedule schedule;
+		
+		switch(main.scanner.nextInt()) {
+		
+		case 2:
+			schedule = LearningRateSchedule.step(STEP_EPOCHS, DECAY_FACTOR);
+			break;
+		
+		case 3:
+			schedule = LearningRateSchedule.cosine(numEpochs);
+			break;
+		
+		case 4:
+			schedule = LearningRateSchedule.plateau(PLATEAU_PATIENCE, DECAY_FACTOR);
+			break;
+		
+		default:
+			schedule = LearningRateSchedule.constant();
+			break;
+			
+		}
+		
+		int patience = 0;
+		
+		if(validationSize > 0) {
+			System.out.println("Enter early stopping patience in epochs (Default - 0, never stop early):");
+			patience = Math.max(0, main.scanner.nextInt());
+		}
+		
+		Optional<? extends ExampleSource> trainingSet = ExampleSource.open(DataSet.train);
+		
+		if(trainingSet.isEmpty()) {
+			main.scanner.nextLine();
+			System.out.println();
+			main.state = main.defaultState;
+			return;
+		}
+		
+		ExampleSource examples = trainingSet.get();
+		
+		TrainingController controller;
+		
+		try {
+			controller = new TrainingController(main.loadedNetwork, examples, validationSize, schedule, 
+					learningRate, numEpochs, patience, new Random().nextLong());
+		} catch (IllegalArgumentException e) {
+			main.scanner.nextLine();
+			System.out.println(e.getMessage());
+			System.out.println();
+			main.state = main.defaultState;
+			return;
+		}
+		
+		//A batch can be no larger than the examples left for training after the validation split
+		batchSize = Math.min(controller.trainingIndices().length, batchSize);
+		
 		System.out.println("Training in progress...");
 		System.out.println("============================================================");
 		
-		int numExamplesTotal = numEpochs * 60_000;
-		int numExamplesProcessed = 0;
+		if(asynchronous) {
+			trainAsynchronously(main, examples, controller, numEpochs, numThreads);
+			return;
+		}
+		
+		ParallelTrainer parallelTrainer = (numThreads > 1) ? new ParallelTrainer(main.loadedNetwork, numThreads, optimizer) : null;
+		GradientAccumulator gradient = (numThreads > 1 || singlePrecision) ? null : new GradientAccumulator(main.loadedNetwork);
+		
+		//Single precision training runs on its own copy of the weights, written back every epoch.
+		//Mixed precision training keeps the loaded network as the master copy and refreshes the
+		//float weights from it after every step
+		FloatNetwork floatNetwork = (singlePrecision || mixedPrecision) ? new FloatNetwork(main.loadedNetwork) : null;
+		
+		//With one example per batch and plain SGD, weights are updated straight from each example's errors
+		boolean online = (parallelTrainer == null && floatNetwork == null && batchSize == 1 && plainSgd);
+		TrainingWorkspace workspace = online ? new TrainingWorkspace(main.loadedNetwork) : null;
+		Vector input = new Vector(ExampleSource.PIXELS);
+		Vector desiredOutput = new Vector(10);
 		
-		for(int epoch = 0; epoch < numEpochs; epoch++) {
+		BatchPipeline pipeline = new BatchPipeline(examples, controller.trainingIndices(), batchSize, 10, numEpochs, 
+				PIPELINE_DEPTH, PIPELINE_WORKERS, new Random().nextLong());
+		
+		long numBatchesTotal = pipeline.totalBatches();
+		int batchesPerEpoch = pipeline.batchesPerEpoch();
+		double epochLearningRate = controller.learningRate();
+		
+		for(long batchNumber = 0; batchNumber < numBatchesTotal; batchNumber++) {
+			
+			//With a validation set, progress is reported once per epoch instead
+			if(!controller.hasValidation() && batchNumber % Math.max(1, numBatchesTotal / 60) == 0) System.out.print("-");
 			
-			Random rand = new Random();
-			int[] shuffledIndices = new int[60_000];
-			for(int i = 0; i < shuffledIndices.length; i++) shuffledIndices[i] = i;
-			for(int i = shuffledIndices.length - 1; i >= 1; i--) {
-				int j = rand.nextInt(i+1);
-				int temp = shuffledIndices[i];
-				shuffledIndices[i] = shuffledIndices[j];
-				shuffledIndices[j] = temp;
+			BatchPipeline.Batch batch = pipeline.take();
+			
+			if(singlePrecision) {
+				
+				floatNetwork.trainBatch(batch.inputs(), batch.desiredOutputs(), epochLearningRate);
+				
+			} else if(mixedPrecision) {
+				
+				gradient.clear();
+				floatNetwork.backpropBatch(batch.inputs(), batch.desiredOutputs(), gradient);
+				optimizer.step(main.loadedNetwork, gradient, epochLearningRate);
+				floatNetwork.copyFrom(main.loadedNetwork);
+				
+			} else if(parallelTrainer != null) {
+				
+				parallelTrainer.trainBatch(batch.inputs(), batch.desiredOutputs(), epochLearningRate);
+				
+			} else if(online) {
+				
+				batch.inputs().copyColInto(0, input);
+				batch.desiredOutputs().copyColInto(0, desiredOutput);
+				main.loadedNetwork.forwardprop(input, workspace);
+				main.loadedNetwork.trainExample(workspace, desiredOutput, epochLearningRate);
+				
+			} else {
+				
+				BatchActivation networkOutput = main.loadedNetwork.forwardpropBatch(batch.inputs());
+				
+				gradient.clear();
+				main.loadedNetwork.backpropBatch(networkOutput, batch.desiredOutputs(), gradient);
+				optimizer.step(main.loadedNetwork, gradient, epochLearningRate);
+				
 			}
 			
-			for(int batch = 0; batch < 60_000 / batchSize; batch++) {
-				
-				DesiredNetworkUpdate[] desiredChanges = new DesiredNetworkUpdate[batchSize];
-				
-				for(int example = 0; example < batchSize; example++) {
-					
-					if(numExamplesProcessed % (numExamplesTotal / 60) == 0) System.out.print("-");
-					numExamplesProcessed++;
-					
-					int currentExample = shuffledIndices[batch * batchSize + example];
-					
-					Vector desiredOutput = new Vector(10);
-					desiredOutput.set(NetworkFileUtils.getAnswer(DataSet.train, currentExample), 1);
-					
-					NetworkActivation networkOutput = main.loadedNetwork.forwardprop(NetworkFileUtils.getInputVector(DataSet.train, currentExample));
-					desiredChanges[example] = main.loadedNetwork.backprop(networkOutput, desiredOutput);
-					
-				}
+			pipeline.release(batch);
+			
+			if((batchNumber + 1) % batchesPerEpoch == 0) {
 				
-				main.loadedNetwork.updateNetwork(desiredChanges, learningRate);
+				if(singlePrecision) floatNetwork.copyInto(main.loadedNetwork);
+				
+				boolean keepTraining = endEpoch(controller, epochLearningRate);
+				epochLearningRate = controller.learningRate();
+				
+				if(!keepTraining) break;
 				
 			}
 			
 		}
 		
+		pipeline.close();
+		
+		if(parallelTrainer != null) parallelTrainer.close();
+		
 		main.scanner.nextLine();
 		
 		System.out.println();
-		System.out.println("Training session complete.");
+		finishTraining(controller);
+		System.out.printf("Data pipeline: average queue depth %.2f / %d, trainer stalled %d times for %.1f ms\n",
+				pipeline.averageQueueDepth(), pipeline.capacity(), pipeline.stalls(), pipeline.stallNanos() / 1e6);
+		System.out.println();
+		
+		main.loadedNetworkUnsavedChanges = true;
+		
+		main.state = main.defaultState;
+		
+		
+	}
+	
+	/**
+	 * Trains the loaded network with a HogwildTrainer, one epoch at a time, printing the
+	 * progress bar as each epoch finishes.
+	 */
+	private void trainAsynchronously(Main main, ExampleSource examples, TrainingController controller, 
+			int numEpochs, int numThreads) {
+		
+		Random rand = new Random();
+		int printed = 0;
+		
+		try(HogwildTrainer trainer = new HogwildTrainer(main.loadedNetwork, numThreads)) {
+			
+			boolean keepTraining = true;
+			
+			while(keepTraining) {
+				
+				double epochLearningRate = controller.learningRate();
+				trainer.trainEpoch(examples, controller.trainingIndices(), epochLearningRate, rand.nextLong());
+				
+				keepTraining = endEpoch(controller, epochLearningRate);
+				
+				if(!controller.hasValidation()) {
+					for(int target = 60 * controller.epoch() / numEpochs; printed < target; printed++) System.out.print("-");
+				}
+				
+			}
+			
+		}
+		
+		main.scanner.nextLine();
+		
+		System.out.println();
+		finishTraining(controller);
 		System.out.println();
 		
 		main.loadedNetworkUnsavedChanges = true;
 		
 		main.state = main.defaultState;
 		
+	}
+	
+	/**
+	 * Ends an epoch on the controller, printing the validation accuracy if there is a
+	 * validation set, and returns whether training should continue.
+	 */
+	private boolean endEpoch(TrainingController controller, double epochLearningRate) {
+		
+		boolean keepTraining = controller.endEpoch();
+		
+		if(controller.hasValidation()) {
+			System.out.printf("Epoch %d: learning rate %.4g, validation accuracy %.2f%%\n", 
+					controller.epoch(), epochLearningRate, 100 * controller.lastValidationAccuracy());
+		}
+		
+		return keepTraining;
+		
+	}
+	
+	/**
+	 * Reports how the session ended and restores the weights with the best validation
+	 * accuracy.
+	 */
+	private void finishTraining(TrainingController controller) {
+		
+		if(controller.stoppedEarly())
+			System.out.println("Validation accuracy stopped improving, so training was stopped early.");
+		
+		System.out.println("Training session complete.");
+		
+		if(controller.restoreBest())
+			System.out.printf("Restored the weights from epoch %d, with %.2f%% validation accuracy.\n", 
+					controller.bestEpoch(), 100 * controller.bestValidationAccuracy());
 		
 	}
 
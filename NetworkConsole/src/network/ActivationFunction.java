@@ -1,54 +1,603 @@
 package network;
 
-import java.util.function.Function;
+import java.util.function.DoubleUnaryOperator;
 
+/**
+ * An activation function and its derivative. Custom functions can be built from a pair
+ * of DoubleUnaryOperators. The built-in functions are separate final subclasses, so each
+ * array kernel has a single concrete implementation that the JIT can inline and unroll.
+ * No Double values are boxed on either path.
+ * 
+ * Some functions can also give their derivative in terms of their own output, for example
+ * sigmoid'(z) = a(1 - a) where a = sigmoid(z). Backpropagation uses this form when it is
+ * available. It avoids recomputing transcendental functions, and the raw activations of
+ * those layers do not need to be kept.
+ * @author sbush
+ *
+ */
 public class ActivationFunction {
 
-	private Function<Double, Double> function;
-	private Function<Double, Double> derivative;
+	private final DoubleUnaryOperator function;
+	private final DoubleUnaryOperator derivative;
+	private final DoubleUnaryOperator derivativeFromOutput;
 	
-	public ActivationFunction(Function<Double, Double> function, Function<Double, Double> derivative) {
+	public ActivationFunction(DoubleUnaryOperator function, DoubleUnaryOperator derivative) {
+		this(function, derivative, null);
+	}
+	
+	/**
+	 * Constructs a custom activation function whose derivative can also be computed from
+	 * the function's output. derivativeFromOutput must map f(x) to f'(x).
+	 * @param function
+	 * @param derivative
+	 * @param derivativeFromOutput
+	 */
+	public ActivationFunction(DoubleUnaryOperator function, DoubleUnaryOperator derivative, DoubleUnaryOperator derivativeFromOutput) {
 		this.function = function;
 		this.derivative = derivative;
+		this.derivativeFromOutput = derivativeFromOutput;
+	}
+	
+	/**
+	 * Constructor used by the built-in functions, which override every method below
+	 * and so have no need for the operator fields.
+	 */
+	private ActivationFunction() {
+		this(null, null, null);
 	}
 	
 	public double apply(double x) {
-		return function.apply(x);
+		return function.applyAsDouble(x);
 	}
 	
 	public double differentiate(double x) {
-		return derivative.apply(x);
+		return derivative.applyAsDouble(x);
+	}
+	
+	/**
+	 * Applies this function to every entry of src, writing the results into dst. The
+	 * two arrays may be the same array.
+	 * @param src
+	 * @param dst
+	 */
+	public void applyInPlace(double[] src, double[] dst) {
+		applyInPlace(src, dst, src.length);
+	}
+	
+	/**
+	 * Applies this function to the first length entries of src, writing the results into
+	 * dst. The two arrays may be the same array.
+	 * @param src
+	 * @param dst
+	 * @param length
+	 */
+	public void applyInPlace(double[] src, double[] dst, int length) {
+		for(int i = 0; i < length; i++) dst[i] = function.applyAsDouble(src[i]);
+	}
+	
+	/**
+	 * Applies this element-wise function to every entry of src in single precision, writing
+	 * the results into dst. The two arrays may be the same array.
+	 * @param src
+	 * @param dst
+	 */
+	public void applyInPlace(float[] src, float[] dst) {
+		for(int i = 0; i < src.length; i++) dst[i] = (float) apply(src[i]);
+	}
+	
+	/**
+	 * Applies this function to a rows x cols row-major matrix holding one layer's values
+	 * for a different example in each column, writing the results into dst. The two arrays
+	 * may be the same array. Element-wise functions treat the matrix as one long array.
+	 * @param src
+	 * @param dst
+	 * @param rows
+	 * @param cols
+	 */
+	public void applyToColumns(double[] src, double[] dst, int rows, int cols) {
+		applyInPlace(src, dst, rows * cols);
+	}
+	
+	/**
+	 * Returns true if each output of this function depends only on the matching input.
+	 * Functions that are not element-wise, like softmax, have no per-neuron derivative and
+	 * can only be used on the output layer together with a loss whose gradient is fused
+	 * with them.
+	 * @return whether the function is applied element by element
+	 */
+	public boolean isElementwise() {
+		return true;
+	}
+	
+	/**
+	 * Evaluates the derivative of this function at every entry of src, writing the
+	 * results into dst. The two arrays may be the same array.
+	 * @param src
+	 * @param dst
+	 */
+	public void differentiateInPlace(double[] src, double[] dst) {
+		for(int i = 0; i < src.length; i++) dst[i] = derivative.applyAsDouble(src[i]);
+	}
+	
+	/**
+	 * Evaluates the derivative of this function at every entry of src in single precision,
+	 * writing the results into dst. The two arrays may be the same array.
+	 * @param src
+	 * @param dst
+	 */
+	public void differentiateInPlace(float[] src, float[] dst) {
+		for(int i = 0; i < src.length; i++) dst[i] = (float) differentiate(src[i]);
+	}
+	
+	/**
+	 * Returns true if this function's derivative can be computed from its output
+	 * through differentiateFromOutput().
+	 * @return whether the derivative can be computed from the output
+	 */
+	public boolean hasDerivativeFromOutput() {
+		return derivativeFromOutput != null;
+	}
+	
+	/**
+	 * Returns true if backpropagation needs the raw inputs of this function kept, because
+	 * its derivative cannot be computed from its output. Functions that are not element-wise
+	 * are only ever differentiated together with the loss, so they need neither.
+	 * @return whether the raw activations of a layer using this function must be stored
+	 */
+	public boolean needsRawActivations() {
+		return isElementwise() && !hasDerivativeFromOutput();
+	}
+	
+	/**
+	 * Returns the derivative of this function at the point where the function's
+	 * value is a.
+	 * @param a
+	 * @return derivative
+	 */
+	public double differentiateFromOutput(double a) {
+		return derivativeFromOutput.applyAsDouble(a);
+	}
+	
+	/**
+	 * Computes the derivative of this function from every output value in src, writing
+	 * the results into dst. The two arrays may be the same array.
+	 * @param src
+	 * @param dst
+	 */
+	public void differentiateFromOutputInPlace(double[] src, double[] dst) {
+		for(int i = 0; i < src.length; i++) dst[i] = derivativeFromOutput.applyAsDouble(src[i]);
+	}
+	
+	/**
+	 * Computes the derivative of this function from every output value in src in single
+	 * precision, writing the results into dst. The two arrays may be the same array.
+	 * @param src
+	 * @param dst
+	 */
+	public void differentiateFromOutputInPlace(float[] src, float[] dst) {
+		for(int i = 0; i < src.length; i++) dst[i] = (float) differentiateFromOutput(src[i]);
+	}
+	
+	public static final ActivationFunction SIGMOID = new Sigmoid();
+	
+	public static final ActivationFunction RELU = new ReLU();
+	
+	public static final ActivationFunction LEAKY_RELU = new LeakyReLU();
+	
+	public static final ActivationFunction TANH = new TanH();
+	
+	public static final ActivationFunction STEP = new Step();
+	
+	public static final ActivationFunction IDENTITY = new Identity();
+	
+	public static final ActivationFunction SOFTMAX = new Softmax();
+	
+	private static final class Sigmoid extends ActivationFunction {
+		
+		@Override
+		public boolean hasDerivativeFromOutput() {
+			return true;
+		}
+		
+		@Override
+		public double differentiateFromOutput(double a) {
+			return a * (1 - a);
+		}
+		
+		@Override
+		public void differentiateFromOutputInPlace(double[] src, double[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = src[i] * (1 - src[i]);
+		}
+		
+		@Override
+		public void differentiateFromOutputInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = src[i] * (1 - src[i]);
+		}
+		
+		@Override
+		public double apply(double x) {
+			return 1.0 / (1 + Math.exp(-x));
+		}
+		
+		@Override
+		public double differentiate(double x) {
+			double e = Math.exp(-x);
+			return e / ((e + 1) * (e + 1));
+		}
+		
+		@Override
+		public void applyInPlace(double[] src, double[] dst, int length) {
+			for(int i = 0; i < length; i++) dst[i] = 1.0 / (1 + Math.exp(-src[i]));
+		}
+		
+		@Override
+		public void applyInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = (float) (1.0 / (1 + Math.exp(-src[i])));
+		}
+		
+		@Override
+		public void differentiateInPlace(double[] src, double[] dst) {
+			for(int i = 0; i < src.length; i++) {
+				double e = Math.exp(-src[i]);
+				dst[i] = e / ((e + 1) * (e + 1));
+			}
+		}
+		
+		@Override
+		public void differentiateInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) {
+				double e = Math.exp(-src[i]);
+				dst[i] = (float) (e / ((e + 1) * (e + 1)));
+			}
+		}
+		
 	}
 	
-	public static final ActivationFunction SIGMOID = new ActivationFunction(
-			(x) -> 1.0 / (1 + Math.exp(-x)),
-			(x) -> Math.exp(-x) / Math.pow(Math.exp(-x) + 1, 2)
-		);
+	private static final class ReLU extends ActivationFunction {
+		
+		@Override
+		public boolean hasDerivativeFromOutput() {
+			return true;
+		}
+		
+		@Override
+		public double differentiateFromOutput(double a) {
+			return (a > 0) ? 1.0 : 0.0;
+		}
+		
+		@Override
+		public void differentiateFromOutputInPlace(double[] src, double[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = (src[i] > 0) ? 1.0 : 0.0;
+		}
+		
+		@Override
+		public void differentiateFromOutputInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = (src[i] > 0) ? 1f : 0f;
+		}
+		
+		@Override
+		public double apply(double x) {
+			return (x > 0) ? x : 0.0;
+		}
+		
+		@Override
+		public double differentiate(double x) {
+			return (x > 0) ? 1.0 : 0.0;
+		}
+		
+		@Override
+		public void applyInPlace(double[] src, double[] dst, int length) {
+			for(int i = 0; i < length; i++) dst[i] = (src[i] > 0) ? src[i] : 0.0;
+		}
+		
+		@Override
+		public void applyInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = (src[i] > 0) ? src[i] : 0f;
+		}
+		
+		@Override
+		public void differentiateInPlace(double[] src, double[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = (src[i] > 0) ? 1.0 : 0.0;
+		}
+		
+		@Override
+		public void differentiateInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = (src[i] > 0) ? 1f : 0f;
+		}
+		
+	}
 	
-	public static final ActivationFunction RELU = new ActivationFunction(
-			(x) -> (x > 0) ? x : 0.0,
-			(x) -> (x > 0) ? 1.0 : 0.0
-		);
+	private static final class LeakyReLU extends ActivationFunction {
+		
+		@Override
+		public boolean hasDerivativeFromOutput() {
+			return true;
+		}
+		
+		@Override
+		public double differentiateFromOutput(double a) {
+			return (a > 0) ? 1.0 : 0.01;
+		}
+		
+		@Override
+		public void differentiateFromOutputInPlace(double[] src, double[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = (src[i] > 0) ? 1.0 : 0.01;
+		}
+		
+		@Override
+		public void differentiateFromOutputInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = (src[i] > 0) ? 1f : 0.01f;
+		}
+		
+		@Override
+		public double apply(double x) {
+			return (x > 0) ? x : 0.01 * x;
+		}
+		
+		@Override
+		public double differentiate(double x) {
+			return (x > 0) ? 1.0 : 0.01;
+		}
+		
+		@Override
+		public void applyInPlace(double[] src, double[] dst, int length) {
+			for(int i = 0; i < length; i++) dst[i] = (src[i] > 0) ? src[i] : 0.01 * src[i];
+		}
+		
+		@Override
+		public void applyInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = (src[i] > 0) ? src[i] : 0.01f * src[i];
+		}
+		
+		@Override
+		public void differentiateInPlace(double[] src, double[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = (src[i] > 0) ? 1.0 : 0.01;
+		}
+		
+		@Override
+		public void differentiateInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = (src[i] > 0) ? 1f : 0.01f;
+		}
+		
+	}
 	
-	public static final ActivationFunction LEAKY_RELU = new ActivationFunction(
-			(x) -> (x > 0) ? x : 0.01 * x,
-			(x) -> (x > 0) ? 1 : 0.01
-		);
+	private static final class TanH extends ActivationFunction {
+		
+		@Override
+		public boolean hasDerivativeFromOutput() {
+			return true;
+		}
+		
+		@Override
+		public double differentiateFromOutput(double a) {
+			return 1 - a * a;
+		}
+		
+		@Override
+		public void differentiateFromOutputInPlace(double[] src, double[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = 1 - src[i] * src[i];
+		}
+		
+		@Override
+		public void differentiateFromOutputInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = 1 - src[i] * src[i];
+		}
+		
+		@Override
+		public double apply(double x) {
+			return Math.tanh(x);
+		}
+		
+		@Override
+		public double differentiate(double x) {
+			double cosh = Math.cosh(x);
+			return 1 / (cosh * cosh);
+		}
+		
+		@Override
+		public void applyInPlace(double[] src, double[] dst, int length) {
+			for(int i = 0; i < length; i++) dst[i] = Math.tanh(src[i]);
+		}
+		
+		@Override
+		public void applyInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = (float) Math.tanh(src[i]);
+		}
+		
+		@Override
+		public void differentiateInPlace(double[] src, double[] dst) {
+			for(int i = 0; i < src.length; i++) {
+				double cosh = Math.cosh(src[i]);
+				dst[i] = 1 / (cosh * cosh);
+			}
+		}
+		
+		@Override
+		public void differentiateInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) {
+				double cosh = Math.cosh(src[i]);
+				dst[i] = (float) (1 / (cosh * cosh));
+			}
+		}
+		
+	}
 	
-	public static final ActivationFunction TANH = new ActivationFunction(
-			(x) -> Math.tanh(x),
-			(x) -> 1 / Math.pow(Math.cosh(x), 2)
-		);
+	private static final class Step extends ActivationFunction {
+		
+		@Override
+		public boolean hasDerivativeFromOutput() {
+			return true;
+		}
+		
+		@Override
+		public double differentiateFromOutput(double a) {
+			return 0.0;
+		}
+		
+		@Override
+		public void differentiateFromOutputInPlace(double[] src, double[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = 0.0;
+		}
+		
+		@Override
+		public void differentiateFromOutputInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = 0f;
+		}
+		
+		@Override
+		public double apply(double x) {
+			return (x > 0) ? 1.0 : 0.0;
+		}
+		
+		@Override
+		public double differentiate(double x) {
+			return 0.0;
+		}
+		
+		@Override
+		public void applyInPlace(double[] src, double[] dst, int length) {
+			for(int i = 0; i < length; i++) dst[i] = (src[i] > 0) ? 1.0 : 0.0;
+		}
+		
+		@Override
+		public void applyInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = (src[i] > 0) ? 1f : 0f;
+		}
+		
+		@Override
+		public void differentiateInPlace(double[] src, double[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = 0.0;
+		}
+		
+		@Override
+		public void differentiateInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = 0f;
+		}
+		
+	}
 	
-	public static final ActivationFunction STEP = new ActivationFunction(
-			(x) -> (x > 0) ? 1.0 : 0.0,
-			(x) -> 0.0
-		);
+	private static final class Identity extends ActivationFunction {
+		
+		@Override
+		public boolean hasDerivativeFromOutput() {
+			return true;
+		}
+		
+		@Override
+		public double differentiateFromOutput(double a) {
+			return 1.0;
+		}
+		
+		@Override
+		public void differentiateFromOutputInPlace(double[] src, double[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = 1.0;
+		}
+		
+		@Override
+		public void differentiateFromOutputInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = 1f;
+		}
+		
+		@Override
+		public double apply(double x) {
+			return x;
+		}
+		
+		@Override
+		public double differentiate(double x) {
+			return 1.0;
+		}
+		
+		@Override
+		public void applyInPlace(double[] src, double[] dst, int length) {
+			if(src != dst) System.arraycopy(src, 0, dst, 0, length);
+		}
+		
+		@Override
+		public void applyInPlace(float[] src, float[] dst) {
+			if(src != dst) System.arraycopy(src, 0, dst, 0, src.length);
+		}
+		
+		@Override
+		public void differentiateInPlace(double[] src, double[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = 1.0;
+		}
+		
+		@Override
+		public void differentiateInPlace(float[] src, float[] dst) {
+			for(int i = 0; i < src.length; i++) dst[i] = 1f;
+		}
+		
+	}
 	
-	public static final ActivationFunction IDENTITY = new ActivationFunction(
-			(x) -> x,
-			(x) -> 1.0
-		);
+	/**
+	 * Softmax turns a whole layer into a probability distribution, exp(z_i) / sum_j exp(z_j).
+	 * The largest input is subtracted before exponentiating so that large inputs cannot
+	 * overflow. Its derivative is not element-wise, so it is only usable on the output layer
+	 * with cross-entropy loss, whose gradient with respect to z is simply a - y. It has no
+	 * single-value form either, so the scalar methods and the derivatives throw.
+	 */
+	private static final class Softmax extends ActivationFunction {
+		
+		@Override
+		public boolean isElementwise() {
+			return false;
+		}
+		
+		@Override
+		public double apply(double x) {
+			throw new UnsupportedOperationException("Softmax can only be applied to a whole layer at once.");
+		}
+		
+		@Override
+		public double differentiate(double x) {
+			throw new UnsupportedOperationException("Softmax has no per-neuron derivative; use it with cross-entropy loss.");
+		}
+		
+		@Override
+		public void differentiateInPlace(double[] src, double[] dst) {
+			throw new UnsupportedOperationException("Softmax has no per-neuron derivative; use it with cross-entropy loss.");
+		}
+		
+		@Override
+		public void applyInPlace(double[] src, double[] dst, int length) {
+			
+			double max = Double.NEGATIVE_INFINITY;
+			for(int i = 0; i < length; i++) max = Math.max(max, src[i]);
+			
+			double sum = 0;
+			for(int i = 0; i < length; i++) {
+				dst[i] = Math.exp(src[i] - max);
+				sum += dst[i];
+			}
+			
+			double scale = 1.0 / sum;
+			for(int i = 0; i < length; i++) dst[i] *= scale;
+			
+		}
+		
+		@Override
+		public void applyToColumns(double[] src, double[] dst, int rows, int cols) {
+			
+			for(int c = 0; c < cols; c++) {
+				
+				double max = Double.NEGATIVE_INFINITY;
+				for(int r = 0; r < rows; r++) max = Math.max(max, src[r * cols + c]);
+				
+				double sum = 0;
+				for(int r = 0; r < rows; r++) {
+					dst[r * cols + c] = Math.exp(src[r * cols + c] - max);
+					sum += dst[r * cols + c];
+				}
+				
+				double scale = 1.0 / sum;
+				for(int r = 0; r < rows; r++) dst[r * cols + c] *= scale;
+				
+			}
+			
+		}
+		
+	}
 	
 	@Override
 	public String toString() {
@@ -59,6 +608,7 @@ public class ActivationFunction {
 		else if(this == ActivationFunction.TANH) return "TanH";
 		else if (this == ActivationFunction.STEP) return "Step Function";
 		else if(this == ActivationFunction.IDENTITY) return "Identity Function";
+		else if(this == ActivationFunction.SOFTMAX) return "Softmax";
 		else return "Custom Activation Function";
 		
 	}
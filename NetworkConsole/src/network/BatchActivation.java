@@ -0,0 +1,26 @@
+package network;
+
+import linearAlgebra.Matrix;
+
+/**
+ * The activations of every layer of a network for a minibatch of inputs. Each matrix
+ * holds one example per column. As with NetworkActivation, rawActivations is only
+ * filled in for layers whose activation function needs it to compute its derivative.
+ * @author sbush
+ *
+ */
+public record BatchActivation(Matrix[] activations, Matrix[] rawActivations) {
+
+	public Matrix output() {
+		return activations[activations.length - 1];
+	}
+	
+	/**
+	 * Returns the number of examples in the batch.
+	 * @return batch size
+	 */
+	public int batchSize() {
+		return activations[0].getColCount();
+	}
+	
+}
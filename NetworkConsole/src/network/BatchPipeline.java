@@ -0,0 +1,403 @@
+package network;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import linearAlgebra.Matrix;
+
+/**
+ * Prepares training minibatches on background threads while the trainer works on the
+ * current one. Each epoch the given example indices are shuffled, cut into batches and
+ * decoded into a fixed ring of reusable Batch buffers. Batches are handed to the trainer
+ * in order through take(), and the trainer hands each one back with release() once it is
+ * done with it so the buffer can be refilled.
+ *
+ * The pipeline records how many batches were ready whenever the trainer asked for one,
+ * and how long the trainer spent waiting when none were.
+ * @author sbush
+ *
+ */
+public class BatchPipeline implements AutoCloseable {
+
+	/**
+	 * A reusable minibatch buffer. inputs holds one example per column, as expected by
+	 * Network.forwardpropBatch(), and desiredOutputs holds the matching one-hot answers.
+	 */
+	public static final class Batch {
+		
+		private final Matrix inputs;
+		private final Matrix desiredOutputs;
+		private final int[] answers;
+		private long sequence;
+		private boolean ready = false;
+		
+		private Batch(int inputSize, int outputSize, int batchSize) {
+			inputs = new Matrix(inputSize, batchSize);
+			desiredOutputs = new Matrix(outputSize, batchSize);
+			answers = new int[batchSize];
+		}
+		
+		public Matrix inputs() {
+			return inputs;
+		}
+		
+		public Matrix desiredOutputs() {
+			return desiredOutputs;
+		}
+		
+		public int[] answers() {
+			return answers;
+		}
+		
+		public int size() {
+			return answers.length;
+		}
+		
+		/**
+		 * Returns the zero-indexed epoch this batch belongs to.
+		 * @param batchesPerEpoch
+		 * @return epoch
+		 */
+		public int epoch(int batchesPerEpoch) {
+			return (int) (sequence / batchesPerEpoch);
+		}
+		
+	}
+	
+	private final ExampleSource source;
+	private final int[] indices;
+	private final int batchSize;
+	private final int outputSize;
+	private final int batchesPerEpoch;
+	private final long totalBatches;
+	private final long seed;
+	
+	private final Batch[] ring;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private final ConcurrentHashMap<Integer, int[]> epochOrders = new ConcurrentHashMap<>();
+	private final AtomicLong nextToProduce = new AtomicLong();
+	private final Thread[] workers;
+	
+	private long nextToTake = 0;
+	private volatile boolean closed = false;
+	
+	private long stallNanos = 0;
+	private long stalls = 0;
+	private long readyBatchesSeen = 0;
+	
+	/**
+	 * Starts a pipeline that will produce numEpochs epochs of batches drawn from the given
+	 * example indices of the source. Leftover examples that do not fill a whole batch are
+	 * skipped each epoch.
+	 * @param source
+	 * @param indices
+	 * @param batchSize
+	 * @param outputSize
+	 * @param numEpochs
+	 * @param depth number of batch buffers in the ring
+	 * @param numWorkers number of background threads preparing batches
+	 * @param seed
+	 */
+	public BatchPipeline(ExampleSource source, int[] indices, int batchSize, int outputSize,
+			int numEpochs, int depth, int numWorkers, long seed) {
+		
+		if(batchSize < 1 || batchSize > indices.length)
+			throw new IllegalArgumentException("Batch size must be between 1 and the number of examples.");
+		
+		if(depth < 1 || numWorkers < 1)
+			throw new IllegalArgumentException("Pipeline needs at least one buffer and one worker.");
+		
+		this.source = source;
+		this.indices = indices.clone();
+		this.batchSize = batchSize;
+		this.outputSize = outputSize;
+		this.batchesPerEpoch = indices.length / batchSize;
+		this.totalBatches = (long) batchesPerEpoch * numEpochs;
+		this.seed = seed;
+		
+		this.ring = new Batch[depth];
+		for(int i = 0; i < depth; i++) {
+			ring[i] = new Batch(ExampleSource.PIXELS, outputSize, batchSize);
+			ring[i].sequence = i - depth;
+		}
+		
+		this.workers = new Thread[numWorkers];
+		for(int i = 0; i < numWorkers; i++) {
+			workers[i] = new Thread(this::produce, "batch-pipeline-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		
+	}
+	
+	/**
+	 * Returns the number of batches in each epoch.
+	 * @return batches per epoch
+	 */
+	public int batchesPerEpoch() {
+		return batchesPerEpoch;
+	}
+	
+	/**
+	 * Returns the total number of batches this pipeline will produce.
+	 * @return total batches
+	 */
+	public long totalBatches() {
+		return totalBatches;
+	}
+	
+	/**
+	 * Returns the next batch in order, waiting for it to be prepared if necessary. The
+	 * batch must be passed back to release() before it can be reused.
+	 * @return next batch
+	 */
+	public Batch take() {
+		
+		if(nextToTake >= totalBatches) throw new IllegalStateException("Pipeline has no more batches.");
+		
+		lock.lock();
+		
+		try {
+			
+			readyBatchesSeen += readyCount();
+			
+			Batch batch = ring[(int) (nextToTake % ring.length)];
+			
+			if(!(batch.ready && batch.sequence == nextToTake)) {
+				
+				long start = System.nanoTime();
+				stalls++;
+				
+				while(!(batch.ready && batch.sequence == nextToTake)) changed.awaitUninterruptibly();
+				
+				stallNanos += System.nanoTime() - start;
+				
+			}
+			
+			//Orders of finished epochs are no longer needed by any worker
+			if(nextToTake % batchesPerEpoch == 0) epochOrders.remove((int) (nextToTake / batchesPerEpoch) - 1);
+			
+			nextToTake++;
+			
+			return batch;
+			
+		} finally {
+			lock.unlock();
+		}
+		
+	}
+	
+	/**
+	 * Hands a batch returned by take() back to the pipeline so its buffer can be refilled.
+	 * @param batch
+	 */
+	public void release(Batch batch) {
+		
+		lock.lock();
+		
+		try {
+			batch.ready = false;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		
+	}
+	
+	/**
+	 * Returns the number of prepared batches currently waiting to be taken.
+	 * @return queue depth
+	 */
+	public int queueDepth() {
+		
+		lock.lock();
+		
+		try {
+			return readyCount();
+		} finally {
+			lock.unlock();
+		}
+		
+	}
+	
+	/**
+	 * Returns the average number of prepared batches that were waiting each time the
+	 * trainer called take().
+	 * @return average queue depth
+	 */
+	public double averageQueueDepth() {
+		
+		lock.lock();
+		
+		try {
+			return (nextToTake == 0) ? 0 : readyBatchesSeen / (double) nextToTake;
+		} finally {
+			lock.unlock();
+		}
+		
+	}
+	
+	/**
+	 * Returns the number of calls to take() that had to wait for a batch.
+	 * @return number of stalls
+	 */
+	public long stalls() {
+		
+		lock.lock();
+		
+		try {
+			return stalls;
+		} finally {
+			lock.unlock();
+		}
+		
+	}
+	
+	/**
+	 * Returns the total time, in nanoseconds, that take() has spent waiting for batches.
+	 * @return stall time
+	 */
+	public long stallNanos() {
+		
+		lock.lock();
+		
+		try {
+			return stallNanos;
+		} finally {
+			lock.unlock();
+		}
+		
+	}
+	
+	/**
+	 * Returns the number of slots in the ring buffer.
+	 * @return capacity
+	 */
+	public int capacity() {
+		return ring.length;
+	}
+	
+	private int readyCount() {
+		
+		int count = 0;
+		for(Batch batch : ring) if(batch.ready) count++;
+		return count;
+		
+	}
+	
+	/**
+	 * Body of each worker thread. Workers claim batch sequence numbers in order, wait for
+	 * the slot of the ring that batch maps to be released, and fill it.
+	 */
+	private void produce() {
+		
+		double[] pixels = new double[ExampleSource.PIXELS];
+		
+		while(!closed) {
+			
+			long sequence = nextToProduce.getAndIncrement();
+			if(sequence >= totalBatches) return;
+			
+			Batch batch = ring[(int) (sequence % ring.length)];
+			
+			lock.lock();
+			
+			try {
+				
+				//The slot is free once the batch that used it ring.length batches ago has been released
+				while(!closed && (batch.ready || batch.sequence != sequence - ring.length)) {
+					changed.awaitUninterruptibly();
+				}
+				
+				if(closed) return;
+				
+			} finally {
+				lock.unlock();
+			}
+			
+			fill(batch, sequence, pixels);
+			
+			lock.lock();
+			
+			try {
+				batch.sequence = sequence;
+				batch.ready = true;
+				changed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			
+		}
+		
+	}
+	
+	private void fill(Batch batch, long sequence, double[] pixels) {
+		
+		int epoch = (int) (sequence / batchesPerEpoch);
+		int first = (int) (sequence % batchesPerEpoch) * batchSize;
+		int[] order = epochOrders.computeIfAbsent(epoch, this::shuffle);
+		
+		double[] inputs = batch.inputs.getData();
+		double[] desired = batch.desiredOutputs.getData();
+		
+		Arrays.fill(desired, 0);
+		
+		for(int example = 0; example < batchSize; example++) {
+			
+			int index = order[first + example];
+			
+			source.readInput(index, pixels, 0);
+			for(int r = 0; r < pixels.length; r++) inputs[r * batchSize + example] = pixels[r];
+			
+			int answer = source.getAnswer(index);
+			batch.answers[example] = answer;
+			if(answer < outputSize) desired[answer * batchSize + example] = 1;
+			
+		}
+		
+	}
+	
+	/**
+	 * Returns the example indices in the order they are used in the given epoch. The same
+	 * epoch always gets the same order for a given seed, whichever worker computes it.
+	 */
+	private int[] shuffle(int epoch) {
+		
+		Random rand = new Random(seed + epoch);
+		int[] shuffledIndices = indices.clone();
+		
+		for(int i = shuffledIndices.length - 1; i >= 1; i--) {
+			int j = rand.nextInt(i+1);
+			int temp = shuffledIndices[i];
+			shuffledIndices[i] = shuffledIndices[j];
+			shuffledIndices[j] = temp;
+		}
+		
+		return shuffledIndices;
+		
+	}
+	
+	/**
+	 * Stops the worker threads. Batches that have not been taken are discarded.
+	 */
+	@Override
+	public void close() {
+		
+		closed = true;
+		
+		lock.lock();
+		
+		try {
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		
+	}
+	
+}
@@ -0,0 +1,114 @@
+package network;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An ExampleSource that reads a dataset's picture and answer files once and keeps
+ * them in memory as byte arrays. Each dataset is loaded at most once per run and
+ * shared by every caller.
+ * @author sbush
+ *
+ */
+public class CachedExampleSource implements ExampleSource {
+
+	private static final Map<DataSet, CachedExampleSource> cache = new EnumMap<>(DataSet.class);
+	
+	private final byte[] pixels;
+	private final byte[] answers;
+	
+	private CachedExampleSource(byte[] pixels, byte[] answers) {
+		this.pixels = pixels;
+		this.answers = answers;
+	}
+	
+	/**
+	 * Returns the cached copy of the given dataset, reading it from disk the first time
+	 * it is requested. Returns an empty Optional if the dataset files could not be read.
+	 * @param set
+	 * @return dataset
+	 */
+	public static synchronized Optional<CachedExampleSource> get(DataSet set) {
+		
+		CachedExampleSource source = cache.get(set);
+		
+		if(source == null) {
+			
+			try {
+				source = load(set);
+			} catch (IOException e) {
+				System.out.println("Could not read the " + set + "ing dataset.");
+				return Optional.empty();
+			}
+			
+			cache.put(set, source);
+			
+		}
+		
+		return Optional.of(source);
+		
+	}
+	
+	private static CachedExampleSource load(DataSet set) throws IOException {
+		
+		int numExamples = set == DataSet.train ? 60000 : 10000;
+		
+		File picturesFile = new File(".\\data\\" + ((set == DataSet.train) ? "trainingPictures.sb" : "testingPictures.sb"));
+		File answersFile = new File(".\\data\\" + ((set == DataSet.train) ? "trainingAnswers.sb" : "testingAnswers.sb"));
+		
+		byte[] pixels = Files.readAllBytes(picturesFile.toPath());
+		byte[] packedAnswers = Files.readAllBytes(answersFile.toPath());
+		
+		if(pixels.length < PIXELS * numExamples || packedAnswers.length < (numExamples + 1) / 2)
+			throw new IOException("Dataset files are truncated.");
+		
+		//Answers are stored two to a byte, with the even-indexed answer in the high nibble
+		byte[] answers = new byte[numExamples];
+		for(int i = 0; i < numExamples; i++) {
+			int b = packedAnswers[i / 2];
+			answers[i] = (byte) (((i % 2 == 0) ? (b >>> 4) : b) & 0b1111);
+		}
+		
+		return new CachedExampleSource(pixels, answers);
+		
+	}
+	
+	@Override
+	public int size() {
+		return answers.length;
+	}
+	
+	@Override
+	public int getAnswer(int index) {
+		return answers[index];
+	}
+	
+	@Override
+	public void readInput(int index, double[] dst, int offset) {
+		
+		int start = PIXELS * index;
+		
+		for(int i = 0; i < PIXELS; i++) dst[offset + i] = pixels[start + i] & 0xFF;
+		
+	}
+	
+	@Override
+	public void readInput(int index, float[] dst, int offset) {
+		
+		int start = PIXELS * index;
+		
+		for(int i = 0; i < PIXELS; i++) dst[offset + i] = pixels[start + i] & 0xFF;
+		
+	}
+	
+	@Override
+	public byte[] getPixels(int index) {
+		return Arrays.copyOfRange(pixels, PIXELS * index, PIXELS * (index + 1));
+	}
+	
+}
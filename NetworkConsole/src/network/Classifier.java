@@ -0,0 +1,27 @@
+package network;
+
+import linearAlgebra.Matrix;
+
+/**
+ * Anything that can assign one of a fixed number of classes to each of a batch of inputs,
+ * so that it can be scored by the Evaluator.
+ * @author sbush
+ *
+ */
+public interface Classifier {
+
+	/**
+	 * Returns the number of classes inputs are assigned to.
+	 * @return number of classes
+	 */
+	public int numClasses();
+	
+	/**
+	 * Classifies every column of inputs, which hold raw pixel values (0 - 255), writing the
+	 * chosen class of column i into classes[i].
+	 * @param inputs
+	 * @param classes
+	 */
+	public void classifyBatch(Matrix inputs, int[] classes);
+	
+}
@@ -5,6 +5,51 @@ import linearAlgebra.Vector;
 
 public record DesiredNetworkUpdate(Matrix[] weights, Vector[] biases) {
 	
+	/**
+	 * Returns an update of all zeros shaped to match a network with the given layer sizes,
+	 * for use as an accumulator.
+	 * @param layerSizes
+	 * @return zero update
+	 */
+	public static DesiredNetworkUpdate zero(int[] layerSizes) {
+		
+		Matrix[] weights = new Matrix[layerSizes.length - 1];
+		Vector[] biases = new Vector[layerSizes.length - 1];
+		
+		for(int i = 0; i < weights.length; i++) {
+			weights[i] = new Matrix(layerSizes[i+1], layerSizes[i]);
+			biases[i] = new Vector(layerSizes[i+1]);
+		}
+		
+		return new DesiredNetworkUpdate(weights, biases);
+		
+	}
+	
+	/**
+	 * Adds the weights and biases of the given update to this one in place.
+	 * @param other
+	 */
+	public void accumulate(DesiredNetworkUpdate other) {
+		
+		for(int i = 0; i < biases.length; i++) {
+			weights[i].addInPlace(other.weights[i]);
+			biases[i].addInPlace(other.biases[i]);
+		}
+		
+	}
+	
+	/**
+	 * Sets every weight and bias of this update to zero.
+	 */
+	public void clear() {
+		
+		for(int i = 0; i < biases.length; i++) {
+			weights[i].clear();
+			biases[i].clear();
+		}
+		
+	}
+	
 	@Override
 	public String toString() {
 		
@@ -0,0 +1,125 @@
+package network;
+
+import java.util.Arrays;
+
+/**
+ * The results of evaluating a network on a dataset. confusion[answer][output] counts the
+ * examples with the given answer that the network classified as output. latencies holds
+ * the time taken to classify each of a sample of examples on its own, in nanoseconds,
+ * sorted in ascending order. It is empty if no latencies were measured.
+ * @author sbush
+ *
+ */
+public record EvaluationReport(long[][] confusion, long elapsedNanos, long[] latencies) {
+
+	/**
+	 * Returns the total number of examples evaluated.
+	 * @return number of examples
+	 */
+	public long total() {
+		
+		long total = 0;
+		for(long[] row : confusion) for(long count : row) total += count;
+		return total;
+		
+	}
+	
+	/**
+	 * Returns the number of examples classified correctly.
+	 * @return number correct
+	 */
+	public long correct() {
+		
+		long correct = 0;
+		for(int i = 0; i < confusion.length; i++) correct += confusion[i][i];
+		return correct;
+		
+	}
+	
+	/**
+	 * Returns the fraction of examples classified correctly.
+	 * @return accuracy
+	 */
+	public double accuracy() {
+		return correct() / (double) total();
+	}
+	
+	/**
+	 * Returns the fraction of examples classified as the given class that really belong to it,
+	 * or NaN if the network never output that class.
+	 * @param label
+	 * @return precision
+	 */
+	public double precision(int label) {
+		
+		long predicted = 0;
+		for(long[] row : confusion) predicted += row[label];
+		return confusion[label][label] / (double) predicted;
+		
+	}
+	
+	/**
+	 * Returns the fraction of examples belonging to the given class that were classified as it,
+	 * or NaN if the dataset has no examples of that class.
+	 * @param label
+	 * @return recall
+	 */
+	public double recall(int label) {
+		
+		long actual = 0;
+		for(long count : confusion[label]) actual += count;
+		return confusion[label][label] / (double) actual;
+		
+	}
+	
+	/**
+	 * Returns the number of examples evaluated per second of wall time.
+	 * @return throughput
+	 */
+	public double throughput() {
+		return total() / (elapsedNanos / 1e9);
+	}
+	
+	/**
+	 * Returns the single-example latency, in nanoseconds, at the given percentile (0 - 100),
+	 * or zero if no latencies were measured.
+	 * @param percentile
+	 * @return latency
+	 */
+	public long latencyPercentile(double percentile) {
+		
+		if(latencies.length == 0) return 0;
+		
+		int index = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+		return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+		
+	}
+	
+	@Override
+	public String toString() {
+		
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append(String.format("%d / %d correct, %f%% accuracy\n", correct(), total(), 100 * accuracy()));
+		sb.append(String.format("%.0f examples/sec\n", throughput()));
+		
+		if(latencies.length > 0) {
+			sb.append(String.format("Single-example latency over %d examples: p50 %.1f us, p99 %.1f us\n", 
+					latencies.length, latencyPercentile(50) / 1e3, latencyPercentile(99) / 1e3));
+		}
+		
+		sb.append("\nClass  Precision  Recall\n");
+		for(int i = 0; i < confusion.length; i++) {
+			sb.append(String.format("%5d  %9.4f  %6.4f\n", i, precision(i), recall(i)));
+		}
+		
+		sb.append("\nConfusion matrix (rows: answer, columns: network output)\n");
+		for(int i = 0; i < confusion.length; i++) {
+			sb.append(i + ": " + Arrays.toString(confusion[i]) + "\n");
+		}
+		
+		return sb.toString();
+		
+	}
+	
+}
@@ -0,0 +1,213 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import linearAlgebra.Matrix;
+
+/**
+ * Scores a network, or any other Classifier, on the examples of a dataset in parallel. The
+ * examples are split into one contiguous range per thread, and each thread runs its range
+ * through the classifier in batches with classifyBatch(). Every thread fills its own
+ * confusion matrix, and these are only merged after all threads have finished, so the
+ * threads never share or lock anything while scoring.
+ * 
+ * Latency is measured separately, once scoring is done and its wall time recorded. The
+ * calling thread alone classifies a sample of the examples one at a time, timing each
+ * call, so the percentiles describe single examples on an otherwise idle machine rather
+ * than averages over batches or examples competing for cores.
+ * @author sbush
+ *
+ */
+public class Evaluator {
+
+	private Evaluator() {}
+	
+	/**
+	 * Evaluates the classifier on every example of the given source.
+	 * @param classifier
+	 * @param source
+	 * @param numThreads
+	 * @param batchSize
+	 * @return evaluation report
+	 */
+	public static EvaluationReport evaluate(Classifier classifier, ExampleSource source, int numThreads, int batchSize) {
+		return evaluate(classifier, source, numThreads, batchSize, 0);
+	}
+	
+	/**
+	 * Evaluates the classifier on every example of the given source, then times about
+	 * latencySamples of them classified one at a time.
+	 * @param classifier
+	 * @param source
+	 * @param numThreads
+	 * @param batchSize
+	 * @param latencySamples
+	 * @return evaluation report
+	 */
+	public static EvaluationReport evaluate(Classifier classifier, ExampleSource source, int numThreads, int batchSize, 
+			int latencySamples) {
+		
+		int[] allExamples = new int[source.size()];
+		for(int i = 0; i < allExamples.length; i++) allExamples[i] = i;
+		
+		return evaluate(classifier, source, allExamples, numThreads, batchSize, latencySamples);
+		
+	}
+	
+	/**
+	 * Evaluates the classifier on the examples of the given source at the given indices.
+	 * @param classifier
+	 * @param source
+	 * @param indices
+	 * @param numThreads
+	 * @param batchSize
+	 * @return evaluation report
+	 */
+	public static EvaluationReport evaluate(Classifier classifier, ExampleSource source, int[] indices, int numThreads, int batchSize) {
+		return evaluate(classifier, source, indices, numThreads, batchSize, 0);
+	}
+	
+	/**
+	 * Evaluates the classifier on the examples of the given source at the given indices,
+	 * then times about latencySamples of them classified one at a time. With no samples,
+	 * the report has no latencies.
+	 * @param classifier
+	 * @param source
+	 * @param indices
+	 * @param numThreads
+	 * @param batchSize
+	 * @param latencySamples
+	 * @return evaluation report
+	 */
+	public static EvaluationReport evaluate(Classifier classifier, ExampleSource source, int[] indices, int numThreads, int batchSize, 
+			int latencySamples) {
+		
+		if(numThreads < 1 || batchSize < 1)
+			throw new IllegalArgumentException("Thread count and batch size must both be positive.");
+		
+		if(latencySamples < 0)
+			throw new IllegalArgumentException("Number of latency samples cannot be negative.");
+		
+		int numExamples = indices.length;
+		int numClasses = classifier.numClasses();
+		
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		
+		List<Callable<long[][]>> confusionTasks = new ArrayList<>(numThreads);
+		
+		for(int t = 0; t < numThreads; t++) {
+			
+			final int start = (int) ((long) numExamples * t / numThreads);
+			final int end = (int) ((long) numExamples * (t + 1) / numThreads);
+			
+			confusionTasks.add(() -> evaluateRange(classifier, source, indices, start, end, batchSize, numClasses));
+			
+		}
+		
+		long[][] confusion = new long[numClasses][numClasses];
+		long elapsed;
+		
+		try {
+			
+			long startTime = System.nanoTime();
+			
+			for(Future<long[][]> future : pool.invokeAll(confusionTasks)) {
+				
+				long[][] partial = future.get();
+				
+				for(int i = 0; i < numClasses; i++) for(int j = 0; j < numClasses; j++) confusion[i][j] += partial[i][j];
+				
+			}
+			
+			elapsed = System.nanoTime() - startTime;
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Evaluation was interrupted.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("An evaluation worker failed.", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		
+		long[] latencies = timeExamples(classifier, source, indices, latencySamples);
+		Arrays.sort(latencies);
+		
+		return new EvaluationReport(confusion, elapsed, latencies);
+		
+	}
+	
+	/**
+	 * Scores the examples at positions start (inclusive) to end (exclusive) of indices and
+	 * returns the confusion matrix for that range.
+	 */
+	private static long[][] evaluateRange(Classifier classifier, ExampleSource source, int[] indices, int start, int end, 
+			int batchSize, int numClasses) {
+		
+		long[][] confusion = new long[numClasses][numClasses];
+		
+		double[] pixels = new double[ExampleSource.PIXELS];
+		int[] answers = new int[batchSize];
+		int[] classes = new int[batchSize];
+		Matrix inputs = new Matrix(ExampleSource.PIXELS, batchSize);
+		
+		for(int first = start; first < end; first += batchSize) {
+			
+			int count = Math.min(batchSize, end - first);
+			if(count != inputs.getColCount()) inputs = new Matrix(ExampleSource.PIXELS, count);
+			
+			double[] inputData = inputs.getData();
+			for(int example = 0; example < count; example++) {
+				int index = indices[first + example];
+				source.readInput(index, pixels, 0);
+				for(int r = 0; r < pixels.length; r++) inputData[r * count + example] = pixels[r];
+				answers[example] = source.getAnswer(index);
+			}
+			
+			classifier.classifyBatch(inputs, classes);
+			
+			for(int example = 0; example < count; example++) confusion[answers[example]][classes[example]]++;
+			
+		}
+		
+		return confusion;
+		
+	}
+	
+	/**
+	 * Classifies up to numSamples of the examples at the given indices, spread evenly over
+	 * them, one at a time, and returns the time each took in nanoseconds. Only the
+	 * classification itself is timed, not reading the example.
+	 */
+	private static long[] timeExamples(Classifier classifier, ExampleSource source, int[] indices, int numSamples) {
+		
+		int count = Math.min(numSamples, indices.length);
+		long[] latencies = new long[count];
+		
+		double[] pixels = new double[ExampleSource.PIXELS];
+		int[] classes = new int[1];
+		Matrix input = new Matrix(ExampleSource.PIXELS, 1);
+		
+		for(int sample = 0; sample < count; sample++) {
+			
+			source.readInput(indices[(int) ((long) indices.length * sample / count)], pixels, 0);
+			System.arraycopy(pixels, 0, input.getData(), 0, pixels.length);
+			
+			long exampleStart = System.nanoTime();
+			classifier.classifyBatch(input, classes);
+			latencies[sample] = System.nanoTime() - exampleStart;
+			
+		}
+		
+		return latencies;
+		
+	}
+	
+}
@@ -0,0 +1,90 @@
+package network;
+
+import java.io.File;
+import java.util.Optional;
+
+import linearAlgebra.Vector;
+
+/**
+ * A dataset of labelled 28 x 28 pictures that can be read by index without any
+ * per-example file access.
+ * @author sbush
+ *
+ */
+public interface ExampleSource {
+
+	/**
+	 * Number of pixels in each picture, and so the size of each input vector.
+	 */
+	public static final int PIXELS = 784;
+	
+	/**
+	 * Returns the given dataset, either cached in memory or memory-mapped. Datasets whose
+	 * picture file would take up more than a quarter of the maximum heap size are mapped;
+	 * smaller ones are read onto the heap once. Returns an empty Optional if the dataset
+	 * could not be read.
+	 * @param set
+	 * @return dataset
+	 */
+	public static Optional<? extends ExampleSource> open(DataSet set) {
+		
+		File picturesFile = new File(".\\data\\" + ((set == DataSet.train) ? "trainingPictures.sb" : "testingPictures.sb"));
+		
+		if(picturesFile.length() > Runtime.getRuntime().maxMemory() / 4) return MappedExampleSource.get(set);
+		else return CachedExampleSource.get(set);
+		
+	}
+	
+	/**
+	 * Returns the number of examples in this dataset.
+	 * @return number of examples
+	 */
+	public int size();
+	
+	/**
+	 * Returns the digit shown in the picture at the given index.
+	 * @param index
+	 * @return answer
+	 */
+	public int getAnswer(int index);
+	
+	/**
+	 * Writes the grayscale value (0 - 255) of every pixel of the picture at the given
+	 * index into dst, starting at the given offset.
+	 * @param index
+	 * @param dst
+	 * @param offset
+	 */
+	public void readInput(int index, double[] dst, int offset);
+	
+	/**
+	 * Writes the grayscale value (0 - 255) of every pixel of the picture at the given
+	 * index into dst, starting at the given offset.
+	 * @param index
+	 * @param dst
+	 * @param offset
+	 */
+	public void readInput(int index, float[] dst, int offset);
+	
+	/**
+	 * Returns a copy of the raw pixel bytes of the picture at the given index.
+	 * @param index
+	 * @return pixels
+	 */
+	public byte[] getPixels(int index);
+	
+	/**
+	 * Returns a new input vector for the picture at the given index, in the same form
+	 * as NetworkFileUtils.getInputVector().
+	 * @param index
+	 * @return input vector
+	 */
+	public default Vector getInputVector(int index) {
+		
+		Vector input = new Vector(PIXELS);
+		readInput(index, input.getData(), 0);
+		return input;
+		
+	}
+	
+}
@@ -0,0 +1,455 @@
+package network;
+
+import java.util.Arrays;
+
+import linearAlgebra.Blas;
+import linearAlgebra.FloatMatrix;
+import linearAlgebra.FloatVector;
+import linearAlgebra.Matrix;
+import linearAlgebra.SparseMatrix;
+
+/**
+ * A single precision engine for a Network. The weights and biases are copied into
+ * FloatMatrix and FloatVector objects, and minibatches are run forward and backward with
+ * the single precision Blas kernels, so the weight matrices, activations and gradients all
+ * take half the memory traffic of the double precision path and twice as many values fit
+ * in each SIMD register.
+ *
+ * Inside the engine each layer's values for a batch are stored with one example per row,
+ * the transpose of the layout used by forwardpropBatch(). Every product then runs along
+ * whole rows of the weight matrices, which are read once per batch, rather than along
+ * rows as short as the batch.
+ *
+ * Element-wise activation functions and their derivatives are applied directly to the
+ * float arrays, and the loss is evaluated one output at a time in double precision. Only
+ * softmax, which needs a whole layer at once, goes through a double precision row, one
+ * example at a time. During training the raw activations are overwritten by the
+ * activation derivatives once they are no longer needed, so the workspace holds no double
+ * precision copies of the layers.
+ *
+ * For single precision networks the engine trains its own copy of the weights with
+ * trainBatch(); copyInto() writes them back into the network, where they are stored exactly
+ * since every float is also a double. The weights a pruned layer has lost are zeroed again
+ * after every step, using the layer's sparse pattern.
+ *
+ * For mixed precision networks the network's double weights stay the master copy. The
+ * engine only holds float copies of them for the forward and backward passes, and every
+ * reduction, from each dot product to the gradient sums over a batch, is accumulated in
+ * double. backpropBatch() adds the gradients to a double GradientAccumulator, any Optimizer
+ * updates the master weights, and copyFrom() refreshes the float copies.
+ * @author sbush
+ *
+ */
+public class FloatNetwork implements Classifier {
+
+	private final int[] layerSizes;
+	private final ActivationFunction[] functions;
+	private final LossFunction loss;
+	private final FloatMatrix[] weights;
+	private final FloatVector[] biases;
+	private final boolean wideAccumulation;
+	
+	//The network's sparse copies of its pruned layers, null for dense layers. Only their
+	//patterns are used, to keep the pruned float weights at zero during trainBatch()
+	private final SparseMatrix[] pruningPatterns;
+	
+	//Gradients summed over the current batch, and the training buffers, which are only
+	//allocated once the engine is trained
+	private FloatMatrix[] weightGradients;
+	private FloatVector[] biasGradients;
+	private Workspace trainingWorkspace;
+	
+	//Buffers for classifyBatch(), one set per thread
+	private final ThreadLocal<Workspace> inferenceWorkspaces = new ThreadLocal<>();
+	
+	/**
+	 * The buffers needed to run a batch of a given size through the network. Each layer's
+	 * float matrices hold one example per row.
+	 */
+	private final class Workspace {
+		
+		private final int batchSize;
+		private final FloatMatrix[] a;
+		private final FloatMatrix[] z;
+		private final FloatMatrix[] dz;
+		
+		//One example of the widest layer in double precision, used to apply softmax and to
+		//sum the errors passed back to a layer in mixed precision
+		private final double[] row;
+		
+		private Workspace(int batchSize, boolean training) {
+			
+			int n = layerSizes.length;
+			
+			this.batchSize = batchSize;
+			this.a = new FloatMatrix[n];
+			this.z = new FloatMatrix[n];
+			this.dz = training ? new FloatMatrix[n] : null;
+			this.row = new double[Arrays.stream(layerSizes).max().getAsInt()];
+			
+			for(int i = 0; i < n; i++) {
+				
+				a[i] = new FloatMatrix(batchSize, layerSizes[i]);
+				
+				if(i == 0) continue;
+				
+				z[i] = new FloatMatrix(batchSize, layerSizes[i]);
+				
+				if(training) dz[i] = new FloatMatrix(batchSize, layerSizes[i]);
+				
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Constructs an engine holding the weights and biases of the given network, each
+	 * rounded to the nearest float. Products are accumulated in double precision if the
+	 * network uses mixed precision.
+	 * @param network
+	 */
+	public FloatNetwork(Network network) {
+		
+		this.layerSizes = network.layerSizes();
+		this.functions = network.activationFunctions();
+		this.loss = network.lossFunction();
+		this.wideAccumulation = (network.precision() == Precision.MIXED);
+		
+		this.weights = new FloatMatrix[layerSizes.length - 1];
+		this.biases = new FloatVector[layerSizes.length - 1];
+		
+		for(int i = 0; i < weights.length; i++) {
+			weights[i] = new FloatMatrix(network.weights[i]);
+			biases[i] = new FloatVector(network.biases[i]);
+		}
+		
+		this.pruningPatterns = network.sparseWeights.clone();
+		
+	}
+	
+	/**
+	 * Writes the weights and biases of this engine back into the given network, which must
+	 * have the same shape as the one this engine was built from, and brings the sparse
+	 * copies of its pruned layers up to date.
+	 * @param network
+	 */
+	public void copyInto(Network network) {
+		
+		for(int i = 0; i < weights.length; i++) {
+			weights[i].copyInto(network.weights[i]);
+			biases[i].copyInto(network.biases[i]);
+		}
+		
+		network.applyPruningMask();
+		
+	}
+	
+	/**
+	 * Overwrites the float weights and biases of this engine with those of the given
+	 * network, rounded to the nearest float.
+	 * @param network
+	 */
+	public void copyFrom(Network network) {
+		
+		for(int i = 0; i < weights.length; i++) {
+			weights[i].copyFrom(network.weights[i]);
+			biases[i].copyFrom(network.biases[i]);
+		}
+		
+	}
+	
+	@Override
+	public int numClasses() {
+		return layerSizes[layerSizes.length - 1];
+	}
+	
+	@Override
+	public void classifyBatch(Matrix inputs, int[] classes) {
+		
+		Workspace workspace = inferenceWorkspaces.get();
+		
+		if(workspace == null || workspace.batchSize != inputs.getColCount()) {
+			workspace = new Workspace(inputs.getColCount(), false);
+			inferenceWorkspaces.set(workspace);
+		}
+		
+		forwardprop(inputs, workspace);
+		
+		float[] output = workspace.a[layerSizes.length - 1].getData();
+		int numClasses = numClasses();
+		
+		for(int example = 0; example < workspace.batchSize; example++) {
+			
+			int first = example * numClasses;
+			
+			int best = 0;
+			for(int r = 1; r < numClasses; r++) if(output[first + r] > output[first + best]) best = r;
+			
+			classes[example] = best;
+			
+		}
+		
+	}
+	
+	/**
+	 * Runs one minibatch forward and backward and takes a plain stochastic gradient descent
+	 * step with the average of its gradients. Each column of inputs is one example, holding
+	 * raw pixel values, and the matching column of desiredOutputs is its desired output.
+	 * @param inputs
+	 * @param desiredOutputs
+	 * @param learningRate
+	 */
+	public void trainBatch(Matrix inputs, Matrix desiredOutputs, double learningRate) {
+		
+		int batchSize = inputs.getColCount();
+		
+		prepareTraining(desiredOutputs, batchSize);
+		
+		if(weightGradients == null) {
+			
+			weightGradients = new FloatMatrix[weights.length];
+			biasGradients = new FloatVector[biases.length];
+			
+			for(int i = 0; i < weights.length; i++) {
+				weightGradients[i] = new FloatMatrix(weights[i].getRowCount(), weights[i].getColCount());
+				biasGradients[i] = new FloatVector(biases[i].size());
+			}
+			
+		}
+		
+		forwardprop(inputs, trainingWorkspace);
+		backprop(desiredOutputs, trainingWorkspace, null);
+		
+		float alpha = (float) (-learningRate / batchSize);
+		
+		for(int i = 0; i < weights.length; i++) {
+			
+			weights[i].axpy(alpha, weightGradients[i]);
+			biases[i].axpy(alpha, biasGradients[i]);
+			
+			if(pruningPatterns[i] != null) pruningPatterns[i].zeroOutside(weights[i].getData(), weights[i].getOffset(), weights[i].getStride());
+			
+		}
+		
+	}
+	
+	/**
+	 * Runs one minibatch forward and backward with the float weights and adds the gradients,
+	 * summed over the batch in double precision, to the given accumulator. This is the
+	 * mixed precision training step; the accumulator is then applied to the network with an
+	 * Optimizer, and copyFrom() brings this engine up to date.
+	 * @param inputs
+	 * @param desiredOutputs
+	 * @param accumulator
+	 */
+	public void backpropBatch(Matrix inputs, Matrix desiredOutputs, GradientAccumulator accumulator) {
+		
+		int batchSize = inputs.getColCount();
+		
+		prepareTraining(desiredOutputs, batchSize);
+		
+		forwardprop(inputs, trainingWorkspace);
+		backprop(desiredOutputs, trainingWorkspace, accumulator);
+		
+		accumulator.addCount(batchSize);
+		
+	}
+	
+	private void prepareTraining(Matrix desiredOutputs, int batchSize) {
+		
+		if(desiredOutputs.getColCount() != batchSize || desiredOutputs.getRowCount() != numClasses())
+			throw new IllegalArgumentException("Desired output matrix must be " + numClasses() + " by " + batchSize);
+		
+		if(trainingWorkspace == null || trainingWorkspace.batchSize != batchSize) {
+			trainingWorkspace = new Workspace(batchSize, true);
+		}
+		
+	}
+	
+	/**
+	 * Fills the activations of the workspace for the given batch of raw inputs, which hold
+	 * one example per column.
+	 */
+	private void forwardprop(Matrix inputs, Workspace workspace) {
+		
+		if(inputs.getRowCount() != layerSizes[0])
+			throw new IllegalArgumentException("Input matrix must have " + layerSizes[0] + " rows");
+		
+		int batchSize = workspace.batchSize;
+		
+		float[] input = workspace.a[0].getData();
+		double[] raw = inputs.getData();
+		for(int r = 0; r < layerSizes[0]; r++) for(int c = 0; c < batchSize; c++) {
+			input[c * layerSizes[0] + r] = (float) (raw[r * batchSize + c] / 255.0);
+		}
+		
+		activate(0, input, input, workspace);
+		
+		for(int i = 1; i < layerSizes.length; i++) {
+			
+			int size = layerSizes[i];
+			float[] z = workspace.z[i].getData();
+			float[] b = biases[i-1].getData();
+			
+			//Z^T = A^T * W^T, one dot product of an example with a row of W per entry
+			if(wideAccumulation) {
+				Blas.gemmNTWide(batchSize, size, layerSizes[i-1],
+						workspace.a[i-1].getData(), 0, layerSizes[i-1],
+						weights[i-1].getData(), 0, layerSizes[i-1],
+						z, 0, size);
+			} else {
+				Blas.gemmNT(batchSize, size, layerSizes[i-1], 1f,
+						workspace.a[i-1].getData(), 0, layerSizes[i-1],
+						weights[i-1].getData(), 0, layerSizes[i-1],
+						0f, z, 0, size);
+			}
+			
+			for(int example = 0; example < batchSize; example++) Blas.axpy(size, 1f, b, 0, z, example * size);
+			
+			activate(i, z, workspace.a[i].getData(), workspace);
+			
+		}
+		
+	}
+	
+	/**
+	 * Applies the given layer's activation function to src, which holds one example per
+	 * row, writing the results into dst. Functions that are not element-wise are applied to
+	 * one example at a time in the workspace's double precision row.
+	 */
+	private void activate(int layer, float[] src, float[] dst, Workspace workspace) {
+		
+		if(functions[layer].isElementwise()) {
+			functions[layer].applyInPlace(src, dst);
+			return;
+		}
+		
+		int size = layerSizes[layer];
+		double[] row = workspace.row;
+		
+		for(int example = 0; example < workspace.batchSize; example++) {
+			
+			int first = example * size;
+			
+			for(int r = 0; r < size; r++) row[r] = src[first + r];
+			functions[layer].applyInPlace(row, row, size);
+			for(int r = 0; r < size; r++) dst[first + r] = (float) row[r];
+			
+		}
+		
+	}
+	
+	/**
+	 * Backpropagates the batch held in the workspace. Without an accumulator, the float
+	 * gradient buffers are overwritten with the gradients summed over the batch. With one,
+	 * the gradients are summed in double precision straight into it, and the errors passed
+	 * back to each layer are accumulated in double as well. Each layer's raw activations
+	 * are replaced by its activation derivatives on the way back.
+	 */
+	private void backprop(Matrix desiredOutputs, Workspace workspace, GradientAccumulator accumulator) {
+		
+		int n = layerSizes.length;
+		int batchSize = workspace.batchSize;
+		int outputSize = layerSizes[n-1];
+		
+		//Output layer: the loss is computed in double precision, one output at a time
+		float[] output = workspace.a[n-1].getData();
+		float[] outputDerivative = loss.needsOutputDerivative() ? activationDerivative(n-1, workspace) : null;
+		float[] outputError = workspace.dz[n-1].getData();
+		double[] desired = desiredOutputs.getData();
+		
+		for(int r = 0; r < outputSize; r++) for(int c = 0; c < batchSize; c++) {
+			int i = c * outputSize + r;
+			double derivative = (outputDerivative == null) ? 0 : outputDerivative[i];
+			outputError[i] = (float) loss.outputError(output[i], desired[r * batchSize + c], derivative);
+		}
+		
+		for(int L = n-1; L >= 1; L--) {
+			
+			int size = layerSizes[L];
+			float[] dz = workspace.dz[L].getData();
+			
+			if(L < n-1) {
+				float[] derivative = activationDerivative(L, workspace);
+				for(int i = 0; i < dz.length; i++) dz[i] *= derivative[i];
+			}
+			
+			if(accumulator == null) {
+				
+				float[] db = biasGradients[L-1].getData();
+				biasGradients[L-1].clear();
+				for(int example = 0; example < batchSize; example++) Blas.axpy(size, 1f, dz, example * size, db, 0);
+				
+				//dW = dZ * A^T, the sum over the batch of each example's outer product
+				Blas.gemmTN(size, layerSizes[L-1], batchSize, 1f,
+						dz, 0, size,
+						workspace.a[L-1].getData(), 0, layerSizes[L-1],
+						0f, weightGradients[L-1].getData(), 0, layerSizes[L-1]);
+				
+				//dZ_prev^T = dZ^T * W
+				if(L > 1) {
+					Blas.gemm(batchSize, layerSizes[L-1], size, 1f,
+							dz, 0, size,
+							weights[L-1].getData(), 0, layerSizes[L-1],
+							0f, workspace.dz[L-1].getData(), 0, layerSizes[L-1]);
+				}
+				
+			} else {
+				
+				double[] db = accumulator.biases()[L-1].getData();
+				for(int example = 0; example < batchSize; example++) Blas.axpyWide(size, 1.0, dz, example * size, db, 0);
+				
+				Matrix dW = accumulator.weights()[L-1];
+				Blas.gemmTNWide(size, layerSizes[L-1], batchSize, 1.0,
+						dz, 0, size,
+						workspace.a[L-1].getData(), 0, layerSizes[L-1],
+						dW.getData(), dW.getOffset(), dW.getStride());
+				
+				//dZ_prev^T = dZ^T * W, one example at a time so the sums need only one row
+				if(L > 1) {
+					
+					int previous = layerSizes[L-1];
+					double[] sums = workspace.row;
+					float[] dzPrev = workspace.dz[L-1].getData();
+					
+					for(int example = 0; example < batchSize; example++) {
+						
+						Arrays.fill(sums, 0, previous, 0);
+						Blas.gemmWide(1, previous, size, 1.0,
+								dz, example * size, size,
+								weights[L-1].getData(), 0, previous,
+								sums, 0, previous);
+						
+						for(int r = 0; r < previous; r++) dzPrev[example * previous + r] = (float) sums[r];
+						
+					}
+					
+				}
+				
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Returns the derivative of the given layer's activation function at each of its
+	 * values in the workspace. The raw activations are not needed again in this pass, so
+	 * the derivatives are written over them.
+	 */
+	private float[] activationDerivative(int layer, Workspace workspace) {
+		
+		float[] derivative = workspace.z[layer].getData();
+		
+		if(functions[layer].hasDerivativeFromOutput()) {
+			functions[layer].differentiateFromOutputInPlace(workspace.a[layer].getData(), derivative);
+		} else {
+			functions[layer].differentiateInPlace(derivative, derivative);
+		}
+		
+		return derivative;
+		
+	}
+	
+}
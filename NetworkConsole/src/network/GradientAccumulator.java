@@ -0,0 +1,121 @@
+package network;
+
+import linearAlgebra.Matrix;
+import linearAlgebra.Vector;
+
+/**
+ * Running sums of the weight and bias gradients of any number of training examples, with
+ * one buffer per layer. Each example's weight gradient is the outer product dz * a^T of its
+ * errors and the previous layer's activations, and is added straight into the sums with
+ * Matrix.rank1Update(), so no per-example gradient matrix is ever built. The memory used depends only
+ * on the size of the network, not on how many examples are accumulated.
+ * @author sbush
+ *
+ */
+public final class GradientAccumulator {
+
+	private final Matrix[] weights;
+	private final Vector[] biases;
+	private int count = 0;
+	
+	/**
+	 * Constructs an empty accumulator for networks with the given layer sizes.
+	 * @param layerSizes
+	 */
+	public GradientAccumulator(int[] layerSizes) {
+		
+		this.weights = new Matrix[layerSizes.length - 1];
+		this.biases = new Vector[layerSizes.length - 1];
+		
+		for(int i = 0; i < weights.length; i++) {
+			weights[i] = new Matrix(layerSizes[i+1], layerSizes[i]);
+			biases[i] = new Vector(layerSizes[i+1]);
+		}
+		
+	}
+	
+	/**
+	 * Constructs an empty accumulator sized for the given network.
+	 * @param network
+	 */
+	public GradientAccumulator(Network network) {
+		this(network.layerSizes);
+	}
+	
+	/**
+	 * Adds the gradients of one example for the weights and biases feeding the given layer
+	 * of weights, given the errors dz of the layer it feeds into and the activations a of the
+	 * layer before it. The weight gradient is added with a single rank-1 update.
+	 * @param layer
+	 * @param dz
+	 * @param a
+	 */
+	void addOuterProduct(int layer, Vector dz, Vector a) {
+		
+		weights[layer].rank1Update(1.0, dz, a);
+		biases[layer].addInPlace(dz);
+		
+	}
+	
+	/**
+	 * Records that the given number of examples have been added.
+	 * @param examples
+	 */
+	void addCount(int examples) {
+		count += examples;
+	}
+	
+	/**
+	 * Adds the sums and example count of another accumulator to this one.
+	 * @param other
+	 */
+	public void accumulate(GradientAccumulator other) {
+		
+		for(int i = 0; i < weights.length; i++) {
+			weights[i].addInPlace(other.weights[i]);
+			biases[i].addInPlace(other.biases[i]);
+		}
+		
+		count += other.count;
+		
+	}
+	
+	/**
+	 * Resets every sum and the example count to zero.
+	 */
+	public void clear() {
+		
+		for(int i = 0; i < weights.length; i++) {
+			weights[i].clear();
+			biases[i].clear();
+		}
+		
+		count = 0;
+		
+	}
+	
+	/**
+	 * Returns the number of examples accumulated since the last call to clear().
+	 * @return example count
+	 */
+	public int count() {
+		return count;
+	}
+	
+	/**
+	 * Returns the summed weight gradients. The matrices are owned by this accumulator.
+	 * @return weight gradient sums
+	 */
+	public Matrix[] weights() {
+		return weights;
+	}
+	
+	/**
+	 * Returns the summed bias gradients. The vectors are owned by this accumulator.
+	 * @return bias gradient sums
+	 */
+	public Vector[] biases() {
+		return biases;
+	}
+	
+}
@@ -0,0 +1,157 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import linearAlgebra.Vector;
+
+/**
+ * Trains a network asynchronously, Hogwild style. Each epoch the example indices are
+ * shuffled and split into one disjoint shard per worker thread. Every worker runs online
+ * gradient descent over its shard with Network.trainExample(), writing each example's
+ * update straight into the network's shared weight and bias arrays without any locking
+ * or barrier between examples.
+ * 
+ * Workers may read weights that another worker is part way through updating, and
+ * concurrent updates to the same weight may overwrite each other. Since each example only
+ * changes the weights by a small amount, these lost or stale updates act as a little extra
+ * noise in the gradient rather than breaking training. Results are not reproducible from
+ * run to run, even with the same seed.
+ * @author sbush
+ *
+ */
+public class HogwildTrainer implements AutoCloseable {
+
+	private final Network network;
+	private final int numThreads;
+	private final ExecutorService pool;
+	
+	//Per worker buffers, reused across epochs
+	private final TrainingWorkspace[] workspaces;
+	private final Vector[] inputBuffers;
+	private final Vector[] desiredBuffers;
+	
+	/**
+	 * Constructs a trainer for the given network using the given number of worker threads.
+	 * @param network
+	 * @param numThreads
+	 */
+	public HogwildTrainer(Network network, int numThreads) {
+		
+		if(numThreads < 1)
+			throw new IllegalArgumentException("At least one worker thread is required.");
+		
+		this.network = network;
+		this.numThreads = numThreads;
+		
+		this.pool = Executors.newFixedThreadPool(numThreads, (runnable) -> {
+			Thread thread = new Thread(runnable, "hogwild-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		int outputSize = network.layerSizes[network.numLayers() - 1];
+		
+		this.workspaces = new TrainingWorkspace[numThreads];
+		this.inputBuffers = new Vector[numThreads];
+		this.desiredBuffers = new Vector[numThreads];
+		
+		for(int i = 0; i < numThreads; i++) {
+			workspaces[i] = new TrainingWorkspace(network);
+			inputBuffers[i] = new Vector(network.layerSizes[0]);
+			desiredBuffers[i] = new Vector(outputSize);
+		}
+		
+	}
+	
+	/**
+	 * Runs one epoch over the given example indices of the source, returning once every
+	 * worker has finished its shard.
+	 * @param source
+	 * @param indices
+	 * @param learningRate
+	 * @param seed used to shuffle the examples
+	 */
+	public void trainEpoch(ExampleSource source, int[] indices, double learningRate, long seed) {
+		
+		int[] order = shuffle(indices, new Random(seed));
+		
+		List<Callable<Void>> tasks = new ArrayList<>(numThreads);
+		
+		for(int t = 0; t < numThreads; t++) {
+			
+			final int start = (int) ((long) order.length * t / numThreads);
+			final int end = (int) ((long) order.length * (t + 1) / numThreads);
+			
+			final TrainingWorkspace workspace = workspaces[t];
+			final Vector input = inputBuffers[t];
+			final Vector desiredOutput = desiredBuffers[t];
+			
+			tasks.add(() -> {
+				
+				double[] desired = desiredOutput.getData();
+				
+				for(int i = start; i < end; i++) {
+					
+					int index = order[i];
+					int answer = source.getAnswer(index);
+					
+					source.readInput(index, input.getData(), 0);
+					if(answer < desired.length) desired[answer] = 1;
+					
+					network.forwardprop(input, workspace);
+					network.trainExample(workspace, desiredOutput, learningRate);
+					
+					if(answer < desired.length) desired[answer] = 0;
+					
+				}
+				
+				return null;
+				
+			});
+			
+		}
+		
+		try {
+			
+			for(Future<Void> future : pool.invokeAll(tasks)) future.get();
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Training was interrupted.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("A training worker failed.", e.getCause());
+		}
+		
+	}
+	
+	private static int[] shuffle(int[] indices, Random rand) {
+		
+		int[] shuffledIndices = indices.clone();
+		
+		for(int i = shuffledIndices.length - 1; i >= 1; i--) {
+			int j = rand.nextInt(i+1);
+			int temp = shuffledIndices[i];
+			shuffledIndices[i] = shuffledIndices[j];
+			shuffledIndices[j] = temp;
+		}
+		
+		return shuffledIndices;
+		
+	}
+	
+	/**
+	 * Shuts down the worker threads.
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+	
+}
@@ -0,0 +1,193 @@
+package network;
+
+/**
+ * Decides the learning rate used for each epoch of a training session, as a multiple of
+ * the base learning rate chosen for the session. Schedules that react to how training is
+ * going are told the validation accuracy at the end of every epoch through observe().
+ * @author sbush
+ *
+ */
+public abstract class LearningRateSchedule {
+
+	private LearningRateSchedule() {}
+	
+	/**
+	 * Keeps the learning rate at the base rate.
+	 * @return schedule
+	 */
+	public static LearningRateSchedule constant() {
+		return new Constant();
+	}
+	
+	/**
+	 * Multiplies the learning rate by factor every epochsPerStep epochs.
+	 * @param epochsPerStep
+	 * @param factor
+	 * @return schedule
+	 */
+	public static LearningRateSchedule step(int epochsPerStep, double factor) {
+		
+		if(epochsPerStep < 1)
+			throw new IllegalArgumentException("Each step must last at least one epoch.");
+		
+		return new Step(epochsPerStep, factor);
+		
+	}
+	
+	/**
+	 * Decays the learning rate from the base rate towards zero along half a cosine wave,
+	 * reaching zero at the end of the given number of epochs.
+	 * @param numEpochs
+	 * @return schedule
+	 */
+	public static LearningRateSchedule cosine(int numEpochs) {
+		
+		if(numEpochs < 1)
+			throw new IllegalArgumentException("Cosine schedule must span at least one epoch.");
+		
+		return new Cosine(numEpochs);
+		
+	}
+	
+	/**
+	 * Multiplies the learning rate by factor whenever the validation accuracy has not
+	 * improved for the given number of epochs.
+	 * @param patience
+	 * @param factor
+	 * @return schedule
+	 */
+	public static LearningRateSchedule plateau(int patience, double factor) {
+		
+		if(patience < 1)
+			throw new IllegalArgumentException("Patience must be at least one epoch.");
+		
+		return new Plateau(patience, factor);
+		
+	}
+	
+	/**
+	 * Returns the learning rate to use for the given zero-indexed epoch.
+	 * @param baseRate
+	 * @param epoch
+	 * @return learning rate
+	 */
+	public abstract double learningRate(double baseRate, int epoch);
+	
+	/**
+	 * Records the validation accuracy measured at the end of an epoch.
+	 * @param validationAccuracy
+	 */
+	void observe(double validationAccuracy) {}
+	
+	/**
+	 * Returns true if this schedule can only work with validation accuracies.
+	 * @return whether a validation set is required
+	 */
+	public boolean needsValidation() {
+		return false;
+	}
+	
+	private static final class Constant extends LearningRateSchedule {
+		
+		@Override
+		public double learningRate(double baseRate, int epoch) {
+			return baseRate;
+		}
+		
+		@Override
+		public String toString() {
+			return "Constant";
+		}
+		
+	}
+	
+	private static final class Step extends LearningRateSchedule {
+		
+		private final int epochsPerStep;
+		private final double factor;
+		
+		private Step(int epochsPerStep, double factor) {
+			this.epochsPerStep = epochsPerStep;
+			this.factor = factor;
+		}
+		
+		@Override
+		public double learningRate(double baseRate, int epoch) {
+			return baseRate * Math.pow(factor, epoch / epochsPerStep);
+		}
+		
+		@Override
+		public String toString() {
+			return "Step decay";
+		}
+		
+	}
+	
+	private static final class Cosine extends LearningRateSchedule {
+		
+		private final int numEpochs;
+		
+		private Cosine(int numEpochs) {
+			this.numEpochs = numEpochs;
+		}
+		
+		@Override
+		public double learningRate(double baseRate, int epoch) {
+			return baseRate * 0.5 * (1 + Math.cos(Math.PI * Math.min(epoch, numEpochs) / numEpochs));
+		}
+		
+		@Override
+		public String toString() {
+			return "Cosine";
+		}
+		
+	}
+	
+	private static final class Plateau extends LearningRateSchedule {
+		
+		private final int patience;
+		private final double factor;
+		
+		private double best = Double.NEGATIVE_INFINITY;
+		private int epochsWithoutImprovement = 0;
+		private double multiplier = 1.0;
+		
+		private Plateau(int patience, double factor) {
+			this.patience = patience;
+			this.factor = factor;
+		}
+		
+		@Override
+		public double learningRate(double baseRate, int epoch) {
+			return baseRate * multiplier;
+		}
+		
+		@Override
+		void observe(double validationAccuracy) {
+			
+			if(validationAccuracy > best) {
+				best = validationAccuracy;
+				epochsWithoutImprovement = 0;
+				return;
+			}
+			
+			if(++epochsWithoutImprovement >= patience) {
+				multiplier *= factor;
+				epochsWithoutImprovement = 0;
+			}
+			
+		}
+		
+		@Override
+		public boolean needsValidation() {
+			return true;
+		}
+		
+		@Override
+		public String toString() {
+			return "Decay on plateau";
+		}
+		
+	}
+	
+}
@@ -0,0 +1,76 @@
+package network;
+
+/**
+ * The loss a network is trained to minimize. The error backpropagated from the output
+ * layer is the gradient of the loss with respect to the output layer's raw activations.
+ * @author sbush
+ *
+ */
+public enum LossFunction {
+
+	/**
+	 * Sum of squared differences, (a - y)^2. Its gradient is 2(a - y) f'(z), which vanishes
+	 * as sigmoid or tanh outputs saturate.
+	 */
+	SQUARED_ERROR,
+	
+	/**
+	 * Cross-entropy, used with a softmax output layer, or with a sigmoid output layer where
+	 * each output is treated as an independent yes or no. In both cases the loss and the
+	 * output activation are differentiated together, and the gradient is simply a - y.
+	 */
+	CROSS_ENTROPY;
+	
+	/**
+	 * Writes the gradient of this loss with respect to the raw activations of the output
+	 * layer into dz, given the output layer's activations a, the desired output y and the
+	 * derivative of the output layer's activation function. The derivative is not read for
+	 * cross-entropy and may be null.
+	 * @param a
+	 * @param y
+	 * @param derivative
+	 * @param dz
+	 */
+	void outputError(double[] a, double[] y, double[] derivative, double[] dz) {
+		
+		if(this == CROSS_ENTROPY) {
+			for(int i = 0; i < dz.length; i++) dz[i] = a[i] - y[i];
+		} else {
+			for(int i = 0; i < dz.length; i++) dz[i] = 2 * (a[i] - y[i]) * derivative[i];
+		}
+		
+	}
+	
+	/**
+	 * Returns the gradient of this loss with respect to a single raw activation of the
+	 * output layer, given its activation a, its desired value y and the derivative of the
+	 * output activation function there, which is not read for cross-entropy.
+	 * @param a
+	 * @param y
+	 * @param derivative
+	 * @return the error of the output neuron
+	 */
+	double outputError(double a, double y, double derivative) {
+		
+		if(this == CROSS_ENTROPY) return a - y;
+		else return 2 * (a - y) * derivative;
+		
+	}
+	
+	/**
+	 * Returns true if outputError() needs the derivative of the output activation.
+	 * @return whether the output derivative is used
+	 */
+	boolean needsOutputDerivative() {
+		return this != CROSS_ENTROPY;
+	}
+	
+	@Override
+	public String toString() {
+		
+		if(this == SQUARED_ERROR) return "Squared Error";
+		else return "Cross-Entropy";
+		
+	}
+	
+}
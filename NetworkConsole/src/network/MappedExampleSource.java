@@ -0,0 +1,140 @@
+package network;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An ExampleSource that memory-maps a dataset's picture and answer files instead of
+ * copying them onto the heap. Pictures are decoded straight from the mapping into the
+ * caller's array, or exposed as read-only views of it, so no data is copied and every
+ * process mapping the same files shares the operating system's page cache for them.
+ * @author sbush
+ *
+ */
+public class MappedExampleSource implements ExampleSource {
+
+	private static final Map<DataSet, MappedExampleSource> cache = new EnumMap<>(DataSet.class);
+	
+	private final MappedByteBuffer pixels;
+	private final MappedByteBuffer answers;
+	private final int numExamples;
+	
+	private MappedExampleSource(MappedByteBuffer pixels, MappedByteBuffer answers, int numExamples) {
+		this.pixels = pixels;
+		this.answers = answers;
+		this.numExamples = numExamples;
+	}
+	
+	/**
+	 * Returns a mapping of the given dataset, creating it the first time it is requested.
+	 * Returns an empty Optional if the dataset files could not be mapped.
+	 * @param set
+	 * @return dataset
+	 */
+	public static synchronized Optional<MappedExampleSource> get(DataSet set) {
+		
+		MappedExampleSource source = cache.get(set);
+		
+		if(source == null) {
+			
+			try {
+				source = map(set);
+			} catch (IOException e) {
+				System.out.println("Could not read the " + set + "ing dataset.");
+				return Optional.empty();
+			}
+			
+			cache.put(set, source);
+			
+		}
+		
+		return Optional.of(source);
+		
+	}
+	
+	private static MappedExampleSource map(DataSet set) throws IOException {
+		
+		int numExamples = set == DataSet.train ? 60000 : 10000;
+		
+		File picturesFile = new File(".\\data\\" + ((set == DataSet.train) ? "trainingPictures.sb" : "testingPictures.sb"));
+		File answersFile = new File(".\\data\\" + ((set == DataSet.train) ? "trainingAnswers.sb" : "testingAnswers.sb"));
+		
+		//The mappings stay valid after the channels are closed
+		try(FileChannel pictureChannel = FileChannel.open(picturesFile.toPath(), StandardOpenOption.READ);
+				FileChannel answerChannel = FileChannel.open(answersFile.toPath(), StandardOpenOption.READ)) {
+			
+			if(pictureChannel.size() < (long) PIXELS * numExamples || answerChannel.size() < (numExamples + 1) / 2)
+				throw new IOException("Dataset files are truncated.");
+			
+			MappedByteBuffer pixels = pictureChannel.map(FileChannel.MapMode.READ_ONLY, 0, (long) PIXELS * numExamples);
+			MappedByteBuffer answers = answerChannel.map(FileChannel.MapMode.READ_ONLY, 0, (numExamples + 1) / 2);
+			
+			return new MappedExampleSource(pixels, answers, numExamples);
+			
+		}
+		
+	}
+	
+	@Override
+	public int size() {
+		return numExamples;
+	}
+	
+	@Override
+	public int getAnswer(int index) {
+		
+		if(index >= numExamples || index < 0) throw new IndexOutOfBoundsException(
+				"Index " + index + " is out of bounds for a dataset of " + numExamples + " examples."
+				);
+		
+		//Answers are stored two to a byte, with the even-indexed answer in the high nibble
+		int b = answers.get(index / 2);
+		return ((index % 2 == 0) ? (b >>> 4) : b) & 0b1111;
+		
+	}
+	
+	@Override
+	public void readInput(int index, double[] dst, int offset) {
+		
+		int start = PIXELS * index;
+		
+		for(int i = 0; i < PIXELS; i++) dst[offset + i] = pixels.get(start + i) & 0xFF;
+		
+	}
+	
+	@Override
+	public void readInput(int index, float[] dst, int offset) {
+		
+		int start = PIXELS * index;
+		
+		for(int i = 0; i < PIXELS; i++) dst[offset + i] = pixels.get(start + i) & 0xFF;
+		
+	}
+	
+	@Override
+	public byte[] getPixels(int index) {
+		
+		byte[] copy = new byte[PIXELS];
+		pixels.get(PIXELS * index, copy);
+		return copy;
+		
+	}
+	
+	/**
+	 * Returns a read-only view of the pixel bytes of the picture at the given index,
+	 * backed directly by the mapped file.
+	 * @param index
+	 * @return pixel view
+	 */
+	public ByteBuffer getPixelView(int index) {
+		return pixels.slice(PIXELS * index, PIXELS).asReadOnlyBuffer();
+	}
+	
+}
@@ -2,16 +2,35 @@ package network;
 
 import java.util.Arrays;
 import java.util.Random;
+import linearAlgebra.Blas;
 import linearAlgebra.Matrix;
+import linearAlgebra.SparseMatrix;
 import linearAlgebra.Vector;
 
-public class Network {
+public class Network implements Classifier {
 	
 	protected String name;
 	protected final int[] layerSizes;
 	protected final Matrix[] weights;
 	protected final Vector[] biases;
 	protected final ActivationFunction[] functions;
+	protected final LossFunction loss;
+	protected final WeightInitialization[] initializations;
+	protected Precision precision = Precision.DOUBLE;
+	
+	//Sparse copies of the weights of pruned layers, null for dense layers. A pruned layer's
+	//dense weights are kept too, for backpropagation. Dense updates are followed by
+	//re-zeroing the pruned weights and refreshing the sparse copy, and online updates only
+	//touch the kept weights, so the pruned weights stay at zero
+	protected final SparseMatrix[] sparseWeights;
+	
+	//Pruned layers with at most this fraction of their weights left are propagated with
+	//sparse kernels. Above it, the dense kernels are faster despite the extra zeros
+	private static final double SPARSE_DENSITY_LIMIT = 0.3;
+	
+	//Two scratch buffers per thread, each as long as the widest layer, that inference
+	//alternates between so that predict() and classify() never allocate
+	private final ThreadLocal<double[][]> inferenceBuffers = ThreadLocal.withInitial(this::newInferenceBuffers);
 	
 	/**
 	 * Constructs a new neural network with a number of layers equal to the size
@@ -20,11 +39,41 @@ public class Network {
 	 * and biases are stored as an array of Matrices and an array of Vectors respectively,
 	 * and are randomnly initialized by the helper methods initializeWeights() and
 	 * initializeBiases(). Activation functions for each layer are also stored in an array.
+	 * The network is trained with squared error loss.
 	 * @param layerSizes
 	 * @param functions
 	 * @param rand
 	 */
 	public Network(String name, int[] layerSizes, ActivationFunction[] functions, Random rand) {
+		this(name, layerSizes, functions, LossFunction.SQUARED_ERROR, rand);
+	}
+	
+	/**
+	 * Constructs a new, randomly initialized neural network like the constructor above,
+	 * which is trained to minimize the given loss function.
+	 * @param name
+	 * @param layerSizes
+	 * @param functions
+	 * @param loss
+	 * @param rand
+	 */
+	public Network(String name, int[] layerSizes, ActivationFunction[] functions, LossFunction loss, Random rand) {
+		this(name, layerSizes, functions, loss, legacyInitializations(layerSizes.length), rand);
+	}
+	
+	/**
+	 * Constructs a new neural network like the constructor above, whose weights and biases
+	 * between each pair of adjacent layers are initialized with the matching entry of
+	 * initializations.
+	 * @param name
+	 * @param layerSizes
+	 * @param functions
+	 * @param loss
+	 * @param initializations one scheme for each layer except the input layer
+	 * @param rand
+	 */
+	public Network(String name, int[] layerSizes, ActivationFunction[] functions, LossFunction loss, 
+			WeightInitialization[] initializations, Random rand) {
 		
 		final int numLayers = layerSizes.length;
 		
@@ -40,6 +89,12 @@ public class Network {
 		for(ActivationFunction function : functions) if(function == null) 
 			throw new IllegalArgumentException("Activation Function cannot be null.");
 		
+		if(initializations.length != layerSizes.length - 1)
+			throw new IllegalArgumentException("Number of weight initializations must be equal to the number of layers minus one.");
+		
+		for(WeightInitialization initialization : initializations) if(initialization == null) 
+			throw new IllegalArgumentException("Weight initialization cannot be null.");
+		
 		////////////////////////////////////////////////////////////////
 		
 		this.name = name;
@@ -50,83 +105,107 @@ public class Network {
 		
 		this.layerSizes = Arrays.copyOf(layerSizes, layerSizes.length);
 		
+		this.loss = loss;
+		checkLossFunction(this.functions, loss);
+		
+		this.initializations = Arrays.copyOf(initializations, initializations.length);
+		
 		this.weights = new Matrix[numLayers - 1];
 		this.biases = new Vector[numLayers - 1];
+		this.sparseWeights = new SparseMatrix[numLayers - 1];
 		
 		for(int i = 0; i < numLayers - 1; i++) {
 			weights[i] = new Matrix(layerSizes[i+1], layerSizes[i]);
 			biases[i] = new Vector(layerSizes[i+1]);
 		}
 		
-		initializeWeights(rand);
-		initializeBiases(rand);
+		initializeParameters(rand);
 		
 	}
 	
 	public Network(String name, int[] layerSizes, ActivationFunction[] functions, Matrix[] weights, Vector[] biases) {
+		this(name, layerSizes, functions, weights, biases, LossFunction.SQUARED_ERROR);
+	}
+	
+	public Network(String name, int[] layerSizes, ActivationFunction[] functions, Matrix[] weights, Vector[] biases,
+			LossFunction loss) {
+		this(name, layerSizes, functions, weights, biases, loss, legacyInitializations(layerSizes.length));
+	}
+	
+	/**
+	 * Constructs a network from existing weights and biases, recording the schemes they
+	 * were originally initialized with.
+	 * @param name
+	 * @param layerSizes
+	 * @param functions
+	 * @param weights
+	 * @param biases
+	 * @param loss
+	 * @param initializations
+	 */
+	public Network(String name, int[] layerSizes, ActivationFunction[] functions, Matrix[] weights, Vector[] biases,
+			LossFunction loss, WeightInitialization[] initializations) {
+		
+		checkLossFunction(functions, loss);
+		
+		if(initializations.length != layerSizes.length - 1)
+			throw new IllegalArgumentException("Number of weight initializations must be equal to the number of layers minus one.");
 		
 		this.name = name;
 		this.layerSizes = layerSizes;
 		this.functions = functions;
 		this.weights = weights;
 		this.biases = biases;
+		this.loss = loss;
+		this.initializations = initializations;
+		this.sparseWeights = new SparseMatrix[weights.length];
 		
 	}
 	
 	/**
-	 * Randomly initializes the weights of the matrix passed in, using the
-	 * random number generator object supplied. Weights are initialized to
-	 * a random double between -1 and -0.1 or 0.1 and 1.
-	 * @param weightMatrix
-	 * @param rand
+	 * Returns an array that initializes every layer of a network with the given number of
+	 * layers using the original uniform scheme.
 	 */
-	private void initializeWeights(Random rand) {
+	private static WeightInitialization[] legacyInitializations(int numLayers) {
 		
-		for(Matrix eachLayer : weights) {
-			
-			for(int r = 0; r < eachLayer.getRowCount(); r++) {
-				
-				for(int c = 0; c < eachLayer.getColCount(); c++) {
-					
-					double value = 0;
-					
-					while(-0.1 <= value && value <= 0.1) {
-						value = 4 * rand.nextDouble() - 2;
-					}
-					
-					eachLayer.set(r, c, value);
-					
-				}
-				
-			}
-			
-		}
+		WeightInitialization[] initializations = new WeightInitialization[Math.max(0, numLayers - 1)];
+		Arrays.fill(initializations, WeightInitialization.LEGACY_UNIFORM);
+		return initializations;
 		
 	}
 	
 	/**
-	 * Randomly initializes the biases passed in, using the
-	 * random number generator object supplied. Weights are initialized to
-	 * a random double between -1 and -0.1 or 0.1 and 1.
-	 * @param weightMatrix
+	 * Checks that the activation functions, including the input layer's, can be trained
+	 * with the given loss. Functions that are not element-wise may only be used on the
+	 * output layer with cross-entropy, and cross-entropy needs a sigmoid or softmax output.
+	 * @param functions
+	 * @param loss
+	 */
+	private static void checkLossFunction(ActivationFunction[] functions, LossFunction loss) {
+		
+		int output = functions.length - 1;
+		
+		for(int i = 0; i < output; i++) if(!functions[i].isElementwise())
+			throw new IllegalArgumentException(functions[i] + " can only be used on the output layer.");
+		
+		if(!functions[output].isElementwise() && loss != LossFunction.CROSS_ENTROPY)
+			throw new IllegalArgumentException(functions[output] + " output layer must be trained with cross-entropy loss.");
+		
+		if(loss == LossFunction.CROSS_ENTROPY && functions[output] != ActivationFunction.SIGMOID 
+				&& functions[output] != ActivationFunction.SOFTMAX)
+			throw new IllegalArgumentException("Cross-entropy loss needs a sigmoid or softmax output layer.");
+		
+	}
+	
+	/**
+	 * Randomly initializes the weights and biases of each layer, using the random number
+	 * generator object supplied and the layer's initialization scheme.
 	 * @param rand
 	 */
-	private void initializeBiases(Random rand) {
+	private void initializeParameters(Random rand) {
 		
-		for(Vector eachLayer : biases) {
-			
-			for(int i = 0; i < eachLayer.size(); i++) {
-				
-				double value = 0;
-				
-				while(-0.1 <= value && value <= 0.1) {
-					value = 2 * rand.nextDouble() - 1;
-				}
-				
-				eachLayer.set(i, value);
-				
-			}
-			
+		for(int i = 0; i < weights.length; i++) {
+			initializations[i].initialize(weights[i], biases[i], rand);
 		}
 		
 	}
@@ -135,7 +214,9 @@ public class Network {
 	 * Takes an input vector and propogates forward through the network, using the activation
 	 * functions supplied at construction. The result is returned as a NetworkActivation object
 	 * which contains the activations of the whole network, which is requried for the 
-	 * backpropogation algorithm. 
+	 * backpropogation algorithm. Raw activations are only kept for layers whose activation
+	 * function cannot compute its derivative from its output; the entries for every other
+	 * layer are null, and their activations are computed in place in the same buffer.
 	 * @param input
 	 * @return network's activations
 	 */
@@ -148,18 +229,212 @@ public class Network {
 		Vector[] rawActivations = new Vector[numLayers()];
 		Vector[] activations = new Vector[numLayers()];
 		
-		rawActivations[0] = new Vector(input.toArray());
-		activations[0] = rawActivations[0].apply((x) -> x/255.0).apply(functions[0]::apply);
+		activations[0] = input.scale(1/255.0);
+		if(functions[0].needsRawActivations()) rawActivations[0] = new Vector(activations[0].getData());
+		functions[0].applyInPlace(activations[0].getData(), activations[0].getData());
 		
 		for(int i = 1; i < numLayers(); i++) {
-			rawActivations[i] = weights[i - 1].multiply(activations[i-1]).add(biases[i-1]);
-			activations[i] = rawActivations[i].apply(functions[i]::apply);
+			
+			Vector z = new Vector(biases[i-1].getData());
+			multiplyWeights(i - 1, activations[i-1], z);
+			
+			if(!functions[i].needsRawActivations()) {
+				functions[i].applyInPlace(z.getData(), z.getData());
+				activations[i] = z;
+			} else {
+				rawActivations[i] = z;
+				activations[i] = new Vector(layerSizes[i]);
+				functions[i].applyInPlace(z.getData(), activations[i].getData());
+			}
+			
 		}
 		
 		return new NetworkActivation(activations, rawActivations);
 		
 	}
 	
+	/**
+	 * Runs the input through the network and writes the output layer's activations into
+	 * output, without keeping any intermediate activations. The pass alternates between
+	 * two scratch buffers owned by the calling thread, so nothing is allocated. input holds
+	 * the raw pixel values, in the same form as the vectors passed to forwardprop().
+	 * @param input
+	 * @param output
+	 */
+	public void predict(double[] input, double[] output) {
+		
+		if(input.length < layerSizes[0])
+			throw new IllegalArgumentException("Input array must be of size " + layerSizes[0]);
+		
+		if(output.length < layerSizes[numLayers() - 1])
+			throw new IllegalArgumentException("Output array must be of size " + layerSizes[numLayers() - 1]);
+		
+		double[] result = propagateInference(input);
+		
+		System.arraycopy(result, 0, output, 0, layerSizes[numLayers() - 1]);
+		
+	}
+	
+	/**
+	 * Returns the index of the output neuron with the largest activation for the given
+	 * input, which is the network's answer for it. Like predict(), this does not allocate.
+	 * @param input
+	 * @return index of the most activated output neuron
+	 */
+	public int classify(double[] input) {
+		
+		if(input.length < layerSizes[0])
+			throw new IllegalArgumentException("Input array must be of size " + layerSizes[0]);
+		
+		double[] result = propagateInference(input);
+		
+		int outputSize = layerSizes[numLayers() - 1];
+		int index = 0;
+		for(int i = 1; i < outputSize; i++) if(result[i] > result[index]) index = i;
+		
+		return index;
+		
+	}
+	
+	/**
+	 * Returns the index of the output neuron with the largest activation for the given
+	 * input vector.
+	 * @param input
+	 * @return index of the most activated output neuron
+	 */
+	public int classify(Vector input) {
+		
+		if(input.size() != layerSizes[0]) {
+			throw new IllegalArgumentException("Input vector must be of size " + layerSizes[0]);
+		}
+		
+		return classify(input.getData());
+		
+	}
+	
+	/**
+	 * Classifies every column of inputs with a single forwardpropBatch(). A single example
+	 * stored as one contiguous column is run through classify() instead, which does not
+	 * allocate.
+	 * @param inputs
+	 * @param classes
+	 */
+	@Override
+	public void classifyBatch(Matrix inputs, int[] classes) {
+		
+		if(inputs.getColCount() == 1 && inputs.getOffset() == 0 && inputs.getStride() == 1) {
+			classes[0] = classify(inputs.getData());
+			return;
+		}
+		
+		Matrix output = forwardpropBatch(inputs).output();
+		int numClasses = output.getRowCount();
+		
+		for(int example = 0; example < output.getColCount(); example++) {
+			
+			int best = 0;
+			for(int r = 1; r < numClasses; r++) if(output.get(r, example) > output.get(best, example)) best = r;
+			
+			classes[example] = best;
+			
+		}
+		
+	}
+	
+	@Override
+	public int numClasses() {
+		return layerSizes[numLayers() - 1];
+	}
+	
+	private double[][] newInferenceBuffers() {
+		
+		int widest = Arrays.stream(layerSizes).max().getAsInt();
+		
+		return new double[][] { new double[widest], new double[widest] };
+		
+	}
+	
+	/**
+	 * Forward pass shared by predict() and classify(). Returns the scratch buffer holding
+	 * the output layer's activations in its first entries.
+	 * @param input
+	 * @return buffer containing the output
+	 */
+	private double[] propagateInference(double[] input) {
+		
+		double[][] buffers = inferenceBuffers.get();
+		double[] current = buffers[0];
+		double[] next = buffers[1];
+		
+		for(int i = 0; i < layerSizes[0]; i++) current[i] = input[i] / 255.0;
+		functions[0].applyInPlace(current, current, layerSizes[0]);
+		
+		for(int layer = 1; layer < numLayers(); layer++) {
+			
+			int rows = layerSizes[layer];
+			int cols = layerSizes[layer - 1];
+			
+			System.arraycopy(biases[layer - 1].getData(), 0, next, 0, rows);
+			
+			if(usesSparseKernels(layer - 1)) {
+				SparseMatrix w = sparseWeights[layer - 1];
+				Blas.spmv(rows, 1.0, w.getRowStarts(), w.getColumns(), w.getValues(), current, 0, 1.0, next, 0);
+			} else {
+				Blas.gemv(rows, cols, 1.0, weights[layer - 1].getData(), weights[layer - 1].getOffset(), 
+						weights[layer - 1].getStride(), current, 0, 1.0, next, 0);
+			}
+			functions[layer].applyInPlace(next, next, rows);
+			
+			double[] swap = current;
+			current = next;
+			next = swap;
+			
+		}
+		
+		return current;
+		
+	}
+	
+	/**
+	 * Writes the derivative of the given layer's activation function into dst, computing it
+	 * from the layer's activations when the function supports it and from its raw activations
+	 * otherwise.
+	 * @param layer
+	 * @param a
+	 * @param z
+	 * @param dst
+	 */
+	private void activationDerivative(int layer, Vector[] a, Vector[] z, double[] dst) {
+		
+		if(functions[layer].hasDerivativeFromOutput())
+			functions[layer].differentiateFromOutputInPlace(a[layer].getData(), dst);
+		else
+			functions[layer].differentiateInPlace(z[layer].getData(), dst);
+		
+	}
+	
+	/**
+	 * Returns the derivative of the given layer's activation function for every example of
+	 * a batch, computed from the layer's activations when the function supports it and from
+	 * its raw activations otherwise.
+	 * @param layer
+	 * @param a
+	 * @param z
+	 * @return derivative
+	 */
+	private double[] activationDerivative(int layer, Matrix[] a, Matrix[] z) {
+		
+		double[] derivative = new double[a[layer].getData().length];
+		
+		if(functions[layer].hasDerivativeFromOutput())
+			functions[layer].differentiateFromOutputInPlace(a[layer].getData(), derivative);
+		else
+			functions[layer].differentiateInPlace(z[layer].getData(), derivative);
+		
+		return derivative;
+		
+	}
+	
 	/**
 	 * Given an object containing the activations of the network for some input and its associated
 	 * desired output, this method uses the backpropogation algorithm to calculate the gradients
@@ -191,18 +466,14 @@ public class Network {
 		int prevSize = layerSizes[n-2];
 		int nextSize;
 		
-		//Output layer activations
-		da[n-1] = new Vector(size);
-		for(int i = 0; i < size; i++)
-			da[n-1].set(i, 2 * (a[n-1].get(i) - y.get(i)));
-		
 		//Output layer raw activations
 		dz[n-1] = new Vector(size);
-		for(int i = 0; i < size; i++) {
-			double dE_da = da[n-1].get(i);
-			double da_dz = functions[n-1].differentiate(z[n-1].get(i));
-			dz[n-1].set(i, dE_da * da_dz);
+		double[] outputDerivative = null;
+		if(loss.needsOutputDerivative()) {
+			outputDerivative = new double[size];
+			activationDerivative(n-1, a, z, outputDerivative);
 		}
+		loss.outputError(a[n-1].getData(), y.getData(), outputDerivative, dz[n-1].getData());
 		
 		//Output layer biases
 		db[n-2] = new Vector(size);
@@ -241,9 +512,10 @@ public class Network {
 			
 			//Hidden layer raw activations
 			dz[L] = new Vector(size);
+			activationDerivative(L, a, z, dz[L].getData());
 			for(int i = 0; i < size; i++) {
 				double dE_da = da[L].get(i);
-				double da_dz = functions[L].differentiate(z[L].get(i));
+				double da_dz = dz[L].get(i);
 				dz[L].set(i, dE_da * da_dz);
 			}
 			
@@ -269,28 +541,347 @@ public class Network {
 		
 	}
 	
+	/**
+	 * Takes an input vector and propagates forward through the network like forwardprop(),
+	 * but writes every activation into the given workspace instead of allocating new
+	 * vectors. The output layer's activations are available from workspace.output().
+	 * @param input
+	 * @param workspace
+	 */
+	public void forwardprop(Vector input, TrainingWorkspace workspace) {
+		
+		if(input.size() != layerSizes[0]) {
+			throw new IllegalArgumentException("Input vector must be of size " + layerSizes[0]);
+		}
+		
+		if(!workspace.fits(layerSizes))
+			throw new IllegalArgumentException("Workspace was not sized for this network.");
+		
+		Vector[] a = workspace.a;
+		Vector[] z = workspace.z;
+		
+		double[] in = input.getData();
+		double[] z0 = z[0].getData();
+		for(int i = 0; i < in.length; i++) z0[i] = in[i] / 255.0;
+		functions[0].applyInPlace(z0, a[0].getData());
+		
+		for(int i = 1; i < numLayers(); i++) {
+			
+			z[i].copyFrom(biases[i-1]);
+			multiplyWeights(i - 1, a[i-1], z[i]);
+			functions[i].applyInPlace(z[i].getData(), a[i].getData());
+			
+		}
+		
+	}
+	
+	/**
+	 * Backpropagates the example last run through forwardprop() with the given workspace,
+	 * writing the gradients of the weights and biases into workspace.gradient() instead
+	 * of allocating them. The gradients are overwritten, not added to.
+	 * @param workspace
+	 * @param desiredOutput
+	 */
+	public void backprop(TrainingWorkspace workspace, Vector desiredOutput) {
+		
+		backpropErrors(workspace, desiredOutput);
+		
+		Matrix[] dW = workspace.gradient().weights();
+		Vector[] db = workspace.gradient().biases();
+		
+		for(int L = numLayers() - 1; L >= 1; L--) {
+			
+			double[] dzData = workspace.dz[L].getData();
+			db[L-1].copyFrom(workspace.dz[L]);
+			
+			//dE/dW = dz * a[L-1]^T
+			double[] prev = workspace.a[L-1].getData();
+			double[] dWData = dW[L-1].getData();
+			int cols = prev.length;
+			for(int r = 0; r < dzData.length; r++) {
+				double dE_dz = dzData[r];
+				int row = r * cols;
+				for(int c = 0; c < cols; c++) dWData[row + c] = dE_dz * prev[c];
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Backpropagates the example last run through forwardprop() with the given workspace,
+	 * adding its gradients straight into the accumulator. No weight gradient matrix is
+	 * built for the example; each layer's contribution is added to the sums row by row.
+	 * @param workspace
+	 * @param desiredOutput
+	 * @param accumulator
+	 */
+	public void backprop(TrainingWorkspace workspace, Vector desiredOutput, GradientAccumulator accumulator) {
+		
+		backpropErrors(workspace, desiredOutput);
+		
+		for(int L = numLayers() - 1; L >= 1; L--)
+			accumulator.addOuterProduct(L-1, workspace.dz[L], workspace.a[L-1]);
+		
+		accumulator.addCount(1);
+		
+	}
+	
+	/**
+	 * Performs one step of online gradient descent on the example last run through
+	 * forwardprop() with the given workspace. The errors of every layer are backpropagated
+	 * first, while the weights still hold the values the example was run with, and then each
+	 * layer's weights are updated directly from its errors and the previous layer's
+	 * activations with a fused rank-1 update, so no gradient is stored anywhere.
+	 * @param workspace
+	 * @param desiredOutput
+	 * @param learningRate
+	 */
+	public void trainExample(TrainingWorkspace workspace, Vector desiredOutput, double learningRate) {
+		
+		backpropErrors(workspace, desiredOutput);
+		
+		for(int L = numLayers() - 1; L >= 1; L--) {
+			
+			//Pruned layers only update the weights they keep, which also keeps their sparse copies current
+			if(sparseWeights[L-1] != null) sparseWeights[L-1].rank1Update(-learningRate, workspace.dz[L], workspace.a[L-1], weights[L-1]);
+			else weights[L-1].rank1Update(-learningRate, workspace.dz[L], workspace.a[L-1]);
+			
+			biases[L-1].axpy(-learningRate, workspace.dz[L]);
+			
+		}
+		
+	}
+	
+	/**
+	 * Fills the dz buffers of the workspace with dE/dz for every layer after the input
+	 * layer, for the example last run through forwardprop() with it.
+	 * @param workspace
+	 * @param desiredOutput
+	 */
+	private void backpropErrors(TrainingWorkspace workspace, Vector desiredOutput) {
+		
+		if(desiredOutput.size() != layerSizes[numLayers() - 1])
+			throw new IllegalArgumentException("Desired output vector must be of length " + layerSizes[numLayers() - 1]);
+		
+		if(!workspace.fits(layerSizes))
+			throw new IllegalArgumentException("Workspace was not sized for this network.");
+		
+		int n = numLayers();
+		
+		Vector[] a = workspace.a;
+		Vector[] z = workspace.z;
+		Vector[] dz = workspace.dz;
+		
+		//Output layer: dE/dz is the gradient of the loss with respect to z
+		double[] outputDerivative = workspace.derivative[n-1].getData();
+		if(loss.needsOutputDerivative()) activationDerivative(n-1, a, z, outputDerivative);
+		loss.outputError(a[n-1].getData(), desiredOutput.getData(), outputDerivative, dz[n-1].getData());
+		
+		for(int L = n-1; L >= 1; L--) {
+			
+			double[] dzData = dz[L].getData();
+			
+			//Hidden layers: dE/dz = dE/da * f'(z)
+			if(L < n-1) {
+				double[] derivative = workspace.derivative[L].getData();
+				activationDerivative(L, a, z, derivative);
+				for(int i = 0; i < dzData.length; i++) dzData[i] *= derivative[i];
+			}
+			
+			//dE/da of the previous layer = W^T * dz, stored in its dz buffer until its derivative is applied
+			if(L > 1) Blas.gemvTransposed(dzData.length, layerSizes[L-1], 1.0, weights[L-1].getData(), 
+					weights[L-1].getOffset(), weights[L-1].getStride(), dzData, 0, 0.0, dz[L-1].getData(), 0);
+			
+		}
+		
+	}
+	
+	/**
+	 * Propagates a whole minibatch forward through the network at once. Each column of
+	 * inputs is one example, so every layer is computed as a single matrix-matrix product
+	 * W * A rather than one matrix-vector product per example.
+	 * @param inputs
+	 * @return network's activations for every example in the batch
+	 */
+	public BatchActivation forwardpropBatch(Matrix inputs) {
+		
+		if(inputs.getRowCount() != layerSizes[0]) {
+			throw new IllegalArgumentException("Input matrix must have " + layerSizes[0] + " rows");
+		}
+		
+		int batchSize = inputs.getColCount();
+		
+		Matrix[] rawActivations = new Matrix[numLayers()];
+		Matrix[] activations = new Matrix[numLayers()];
+		
+		activations[0] = inputs.scale(1/255.0);
+		if(functions[0].needsRawActivations()) rawActivations[0] = activations[0].scale(1.0);
+		functions[0].applyInPlace(activations[0].getData(), activations[0].getData());
+		
+		for(int i = 1; i < numLayers(); i++) {
+			
+			Matrix z = new Matrix(layerSizes[i], batchSize);
+			
+			if(usesSparseKernels(i - 1)) sparseWeights[i - 1].multiplyInto(activations[i-1], z);
+			else weights[i - 1].multiplyInto(activations[i-1], z);
+			
+			z.addToColumns(biases[i-1]);
+			
+			if(!functions[i].needsRawActivations()) {
+				functions[i].applyToColumns(z.getData(), z.getData(), layerSizes[i], batchSize);
+				activations[i] = z;
+			} else {
+				rawActivations[i] = z;
+				activations[i] = new Matrix(layerSizes[i], batchSize);
+				functions[i].applyToColumns(z.getData(), activations[i].getData(), layerSizes[i], batchSize);
+			}
+			
+		}
+		
+		return new BatchActivation(activations, rawActivations);
+		
+	}
+	
+	/**
+	 * Backpropagates a whole minibatch at once, given its activations and a matrix holding
+	 * the desired output of each example as a column. The gradients of all examples are
+	 * summed rather than averaged, and are computed with the matrix products dZ * A^T for
+	 * the weights and W^T * dZ for the previous layer's activations.
+	 * @param result
+	 * @param desiredOutputs
+	 * @return summed gradients of weights and biases
+	 */
+	public DesiredNetworkUpdate backpropBatch(BatchActivation result, Matrix desiredOutputs) {
+		
+		GradientAccumulator gradient = new GradientAccumulator(layerSizes);
+		
+		backpropBatch(result, desiredOutputs, gradient);
+		
+		return new DesiredNetworkUpdate(gradient.weights(), gradient.biases());
+		
+	}
+	
+	/**
+	 * Backpropagates a whole minibatch at once like backpropBatch(), but adds the summed
+	 * gradients into the given accumulator, so a trainer can reuse one set of gradient
+	 * buffers for every batch.
+	 * @param result
+	 * @param desiredOutputs
+	 * @param accumulator
+	 */
+	public void backpropBatch(BatchActivation result, Matrix desiredOutputs, GradientAccumulator accumulator) {
+		
+		if(desiredOutputs.getRowCount() != layerSizes[numLayers() - 1] || desiredOutputs.getColCount() != result.batchSize())
+			throw new IllegalArgumentException("Desired output matrix must be " + layerSizes[numLayers() - 1] 
+					+ " by " + result.batchSize());
+		
+		int n = numLayers();
+		int batchSize = result.batchSize();
+		
+		Matrix[] a = result.activations();
+		Matrix[] z = result.rawActivations();
+		
+		//Output layer: dZ is the gradient of the loss with respect to Z
+		Matrix dz = new Matrix(layerSizes[n-1], batchSize);
+		double[] outputDerivative = loss.needsOutputDerivative() ? activationDerivative(n-1, a, z) : null;
+		loss.outputError(a[n-1].getData(), desiredOutputs.getData(), outputDerivative, dz.getData());
+		
+		for(int L = n-1; L >= 1; L--) {
+			
+			double[] dzData = dz.getData();
+			
+			if(L < n-1) {
+				double[] derivative = activationDerivative(L, a, z);
+				for(int i = 0; i < dzData.length; i++) dzData[i] *= derivative[i];
+			}
+			
+			accumulator.biases()[L-1].addInPlace(dz.rowSums());
+			
+			Matrix dW = accumulator.weights()[L-1];
+			Blas.gemmNT(layerSizes[L], layerSizes[L-1], batchSize, 1.0,
+					dzData, 0, batchSize,
+					a[L-1].getData(), a[L-1].getOffset(), a[L-1].getStride(),
+					1.0, dW.getData(), dW.getOffset(), dW.getStride());
+			
+			if(L > 1) dz = weights[L-1].transposeMultiply(dz);
+			
+		}
+		
+		accumulator.addCount(batchSize);
+		
+	}
+	
+	/**
+	 * Updates the weights and biases of this network from gradients that have already been
+	 * summed over a batch of the given size, such as those returned by backpropBatch(). The
+	 * gradients are averaged, scaled by the learning rate and subtracted from the weights and
+	 * biases in place.
+	 * @param summedUpdate
+	 * @param batchSize
+	 * @param learningRate
+	 */
+	public void updateNetwork(DesiredNetworkUpdate summedUpdate, int batchSize, double learningRate) {
+		
+		double alpha = -learningRate / batchSize;
+		
+		for(int i = 0; i < numLayers() - 1; i++) {
+			this.weights[i].axpy(alpha, summedUpdate.weights()[i]);
+			this.biases[i].axpy(alpha, summedUpdate.biases()[i]);
+		}
+		
+		applyPruningMask();
+		
+	}
+	
+	/**
+	 * Updates the weights and biases of this network from the gradients summed in the given
+	 * accumulator, averaged over the number of examples it holds and scaled by the learning
+	 * rate. The accumulator is left unchanged and should be cleared before the next batch.
+	 * @param accumulator
+	 * @param learningRate
+	 */
+	public void updateNetwork(GradientAccumulator accumulator, double learningRate) {
+		
+		if(accumulator.count() == 0) return;
+		
+		double alpha = -learningRate / accumulator.count();
+		
+		for(int i = 0; i < numLayers() - 1; i++) {
+			this.weights[i].axpy(alpha, accumulator.weights()[i]);
+			this.biases[i].axpy(alpha, accumulator.biases()[i]);
+		}
+		
+		applyPruningMask();
+		
+	}
+	
 	/**
 	 * Updates the weights and biases of this network according to the desired updates
 	 * passed in. This method averages the desired changes across all updates, scales
 	 * the updates by the given learning rate, and then subtracts the now scaled gradients
-	 * from the network's weights and biases. 
+	 * from the network's weights and biases. The weights and biases are modified in place.
 	 * @param updates
 	 * @param learningRate
 	 */
 	public void updateNetwork(DesiredNetworkUpdate[] updates, double learningRate) {
 		
+		double alpha = -learningRate / updates.length;
+		
 		for(DesiredNetworkUpdate update : updates) {
 			
 			Matrix[] weightUpdates = update.weights();
 			Vector[] biasUpdates = update.biases();
 			
 			for(int i = 0; i < numLayers() - 1; i++) {
-				this.weights[i] = this.weights[i].add(weightUpdates[i].scale(-learningRate/updates.length));
-				this.biases[i] = this.biases[i].add(biasUpdates[i].scale(-learningRate/updates.length));
+				this.weights[i].axpy(alpha, weightUpdates[i]);
+				this.biases[i].axpy(alpha, biasUpdates[i]);
 			}
 			
 		}
 		
+		applyPruningMask();
+		
 	}
 	
 	/**
@@ -344,6 +935,244 @@ public class Network {
 		return Arrays.copyOf(functions, functions.length);
 	}
 	
+	/**
+	 * Returns the loss function this network is trained to minimize.
+	 * @return loss function
+	 */
+	public LossFunction lossFunction() {
+		return loss;
+	}
+	
+	/**
+	 * Returns a copy of the array containing the scheme each layer's weights were
+	 * initialized with, starting with the first hidden layer.
+	 * @return a copy of the initializations array
+	 */
+	public WeightInitialization[] weightInitializations() {
+		return Arrays.copyOf(initializations, initializations.length);
+	}
+	
+	/**
+	 * Returns the precision this network is stored and trained in.
+	 * @return precision
+	 */
+	public Precision precision() {
+		return precision;
+	}
+	
+	/**
+	 * Sets the precision this network is stored and trained in. Switching to single
+	 * precision rounds every weight and bias to the nearest float, so that this network
+	 * holds exactly the values a FloatNetwork built from it trains and saves.
+	 * @param precision
+	 */
+	public void setPrecision(Precision precision) {
+		
+		this.precision = precision;
+		
+		if(precision != Precision.FLOAT) return;
+		
+		for(int i = 0; i < weights.length; i++) {
+			double[] w = weights[i].getData();
+			for(int j = 0; j < w.length; j++) w[j] = (float) w[j];
+			double[] b = biases[i].getData();
+			for(int j = 0; j < b.length; j++) b[j] = (float) b[j];
+		}
+		
+		applyPruningMask();
+		
+	}
+	
+	/**
+	 * Returns a deep copy of this network, with its own weights and biases.
+	 * @return copy of the network
+	 */
+	public Network copy() {
+		
+		Matrix[] weightsCopy = new Matrix[weights.length];
+		Vector[] biasesCopy = new Vector[biases.length];
+		
+		for(int i = 0; i < weights.length; i++) {
+			weightsCopy[i] = new Matrix(weights[i].getRowCount(), weights[i].getColCount());
+			weightsCopy[i].copyFrom(weights[i]);
+			biasesCopy[i] = new Vector(biases[i].size());
+			biasesCopy[i].copyFrom(biases[i]);
+		}
+		
+		Network copy = new Network(name, layerSizes(), activationFunctions(), weightsCopy, biasesCopy, loss, weightInitializations());
+		copy.precision = precision;
+		
+		for(int i = 0; i < sparseWeights.length; i++) {
+			if(sparseWeights[i] != null) copy.sparseWeights[i] = sparseWeights[i].copy();
+		}
+		
+		return copy;
+		
+	}
+	
+	/**
+	 * Overwrites the weights and biases of this network with those of another network of
+	 * the same shape.
+	 * @param other
+	 */
+	public void copyParametersFrom(Network other) {
+		
+		if(!Arrays.equals(layerSizes, other.layerSizes))
+			throw new IllegalArgumentException("Cannot copy parameters between networks of different shapes.");
+		
+		for(int i = 0; i < weights.length; i++) {
+			weights[i].copyFrom(other.weights[i]);
+			biases[i].copyFrom(other.biases[i]);
+		}
+		
+		applyPruningMask();
+		
+	}
+	
+	/**
+	 * Prunes each layer's weights by magnitude, zeroing the given fraction of them with the
+	 * smallest absolute values, starting with the weights into the first hidden layer.
+	 * Weights that are already zero count towards the fraction, so pruning a layer again
+	 * to a higher fraction only removes more weights. A fraction of zero leaves a layer as
+	 * it is. Pruned weights stay at zero through any further training.
+	 * @param sparsities fraction of each layer's weights to prune, from 0 to 1
+	 */
+	public void prune(double[] sparsities) {
+		
+		if(sparsities.length != weights.length)
+			throw new IllegalArgumentException("A sparsity must be given for every layer after the input layer.");
+		
+		for(double sparsity : sparsities) if(!(sparsity >= 0 && sparsity <= 1))
+			throw new IllegalArgumentException("Sparsity must be between 0 and 1.");
+		
+		for(int i = 0; i < weights.length; i++) {
+			
+			if(sparsities[i] == 0) continue;
+			
+			double[] w = weights[i].getData();
+			int numKept = w.length - (int) Math.round(sparsities[i] * w.length);
+			
+			//Only the weights a pruned layer still keeps are candidates, so pruned weights stay
+			//pruned, and weights that are merely zero are treated like any other
+			boolean[] keep;
+			if(sparseWeights[i] != null) {
+				keep = sparseWeights[i].patternMask();
+			} else {
+				keep = new boolean[w.length];
+				Arrays.fill(keep, true);
+			}
+			
+			int numCandidates = 0;
+			for(boolean kept : keep) if(kept) numCandidates++;
+			
+			int numDropped = numCandidates - numKept;
+			
+			if(numDropped > 0) {
+				
+				double[] magnitudes = new double[numCandidates];
+				int candidate = 0;
+				for(int j = 0; j < w.length; j++) if(keep[j]) magnitudes[candidate++] = Math.abs(w[j]);
+				Arrays.sort(magnitudes);
+				
+				double threshold = magnitudes[numDropped - 1];
+				
+				//Candidates below the threshold are all dropped, and then as many of those equal
+				//to it as are needed to reach the target
+				int belowThreshold = 0;
+				for(int j = 0; j < w.length; j++) if(keep[j] && Math.abs(w[j]) < threshold) {
+					keep[j] = false;
+					belowThreshold++;
+				}
+				
+				int atThreshold = numDropped - belowThreshold;
+				for(int j = 0; j < w.length && atThreshold > 0; j++) if(keep[j] && Math.abs(w[j]) == threshold) {
+					keep[j] = false;
+					atThreshold--;
+				}
+				
+			}
+			
+			sparseWeights[i] = new SparseMatrix(weights[i], keep);
+			sparseWeights[i].maskAndCopyFrom(weights[i]);
+			
+		}
+		
+	}
+	
+	/**
+	 * Zeroes the pruned weights of every pruned layer and refreshes the layer's sparse
+	 * copy from its dense weights. Called after every update that changes all of the dense
+	 * weights.
+	 */
+	public void applyPruningMask() {
+		
+		for(int i = 0; i < sparseWeights.length; i++) {
+			if(sparseWeights[i] != null) sparseWeights[i].maskAndCopyFrom(weights[i]);
+		}
+		
+	}
+	
+	/**
+	 * Marks the given layer as pruned, keeping only the positions stored in the given
+	 * sparse matrix, which becomes the layer's sparse copy.
+	 * @param layer
+	 * @param pattern
+	 */
+	void setPruningPattern(int layer, SparseMatrix pattern) {
+		
+		sparseWeights[layer] = pattern;
+		pattern.maskAndCopyFrom(weights[layer]);
+		
+	}
+	
+	/**
+	 * Returns true if any layer of this network has been pruned.
+	 * @return whether the network is pruned
+	 */
+	public boolean isPruned() {
+		
+		for(SparseMatrix sparse : sparseWeights) if(sparse != null) return true;
+		
+		return false;
+		
+	}
+	
+	/**
+	 * Returns the fraction of each layer's weights that have not been pruned, starting with
+	 * the weights into the first hidden layer. Layers that have never been pruned have a
+	 * density of one.
+	 * @return density of each layer
+	 */
+	public double[] weightDensities() {
+		
+		double[] densities = new double[sparseWeights.length];
+		
+		for(int i = 0; i < densities.length; i++) {
+			densities[i] = (sparseWeights[i] != null) ? sparseWeights[i].density() : 1.0;
+		}
+		
+		return densities;
+		
+	}
+	
+	/**
+	 * Returns true if the weights into the layer after the given one are sparse enough to
+	 * be multiplied faster by the sparse kernels than by the dense ones.
+	 */
+	private boolean usesSparseKernels(int layer) {
+		return sparseWeights[layer] != null && sparseWeights[layer].density() <= SPARSE_DENSITY_LIMIT;
+	}
+	
+	/**
+	 * Computes y = W * x + y with the weights into the layer after the given one.
+	 */
+	private void multiplyWeights(int layer, Vector x, Vector y) {
+		
+		if(usesSparseKernels(layer)) sparseWeights[layer].gemv(1.0, x, 1.0, y);
+		else weights[layer].gemv(1.0, x, 1.0, y);
+		
+	}
+	
 	public void setName(String name) {
 		this.name = name;
 	}
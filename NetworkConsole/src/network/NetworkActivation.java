@@ -2,6 +2,14 @@ package network;
 
 import linearAlgebra.Vector;
 
+/**
+ * The activations of every layer of a network for a single input. rawActivations holds the
+ * weighted inputs of each layer before the activation function is applied. It is only
+ * filled in for layers whose activation function needs them to compute its derivative;
+ * the other entries are null.
+ * @author sbush
+ *
+ */
 public record NetworkActivation(Vector[] activations, Vector[] rawActivations) {
 
 	public Vector output() {
@@ -17,8 +25,10 @@ public record NetworkActivation(Vector[] activations, Vector[] rawActivations) {
 			
 			//Layer i
 			sb.append("Layer " + i + "\n========\n");
-			sb.append("Raw activations:\n");
-			sb.append(rawActivations[i].toString() + "\n");
+			if(rawActivations[i] != null) {
+				sb.append("Raw activations:\n");
+				sb.append(rawActivations[i].toString() + "\n");
+			}
 			sb.append("Activations:\n");
 			sb.append(activations[i].toString() + "\n");
 			sb.append("\n");
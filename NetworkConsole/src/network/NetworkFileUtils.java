@@ -16,9 +16,37 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 
 import linearAlgebra.Matrix;
+import linearAlgebra.SparseMatrix;
 import linearAlgebra.Vector;
 
 public class NetworkFileUtils {
+
+	//Tags of the trailing metadata section. Tags from METADATA_INITIALIZATION on hold the
+	//initialization scheme of each layer in turn, starting with the first hidden layer
+	private static final int METADATA_LOSS = 1;
+	private static final int METADATA_INITIALIZATION = 256;
+	
+	//Written after the name of networks not stored in double precision, where the original
+	//format has the number of layers, which is always positive. The precision follows it.
+	//Mixed precision networks keep double master weights, so they are saved as doubles
+	private static final int PRECISION_MARKER = -1;
+	private static final int PRECISION_FLOAT = 2;
+	private static final int PRECISION_MIXED = 3;
+	
+	//Written after the precision, if any, by networks with pruned layers. The number of
+	//weight layers and a storage kind for each follow it. Pruned layers are stored in
+	//compressed sparse row form, which keeps their pattern exactly, even for kept weights
+	//that are zero. Pruned layers stored densely, whose pattern is taken to be their nonzero
+	//weights, are still read but no longer written
+	private static final int PRUNING_MARKER = -2;
+	private static final int LAYER_DENSE = 0;
+	private static final int LAYER_PRUNED_DENSE = 1;
+	private static final int LAYER_PRUNED_SPARSE = 2;
+	
+	//Quantized networks are kept apart from the saves folder, since their format is not
+	//readable as a Network. Their files begin with this marker and a format version
+	private static final int QUANTIZED_MARKER = 0x51383031;
+	private static final int QUANTIZED_VERSION = 1;
 	
 	public static Optional<File> getFileFromName(String name) {
 		
@@ -63,11 +91,14 @@ public class NetworkFileUtils {
 		
 		try(FileOutputStream out = new FileOutputStream(file)) {
 			writeNameToFile(out, name);
+			writePrecisionToFile(out, network);
+			writePruningToFile(out, network);
 			writeNumLayersToFile(out, network);
-			writeActivationFunctionsToFile(out, network);
-			writeLayerSizesToFile(out, network);
+			writeActivationFunctionsToFile(out, network.functions);
+			writeLayerSizesToFile(out, network.layerSizes);
 			writeWeightsToFile(out, network);
 			writeBiasesToFile(out, network);
+			writeMetadataToFile(out, network);
 		} catch(FileNotFoundException e) {
 			System.out.println("Could not complete save operation.");
 			System.out.println("Save file may have been corrupted or deleted.");
@@ -98,13 +129,41 @@ public class NetworkFileUtils {
 		
 	}
 	
+	private static void writePrecisionToFile(FileOutputStream out, Network network) throws IOException {
+		
+		if(network.precision == Precision.DOUBLE) return;
+		
+		out.write(toBytes(PRECISION_MARKER));
+		out.write(toBytes((network.precision == Precision.FLOAT) ? PRECISION_FLOAT : PRECISION_MIXED));
+		
+	}
+	
+	private static void writePruningToFile(FileOutputStream out, Network network) throws IOException {
+		
+		if(!network.isPruned()) return;
+		
+		out.write(toBytes(PRUNING_MARKER));
+		out.write(toBytes(network.weights.length));
+		
+		for(int i = 0; i < network.weights.length; i++) out.write(toBytes(layerKind(network, i)));
+		
+	}
+	
+	/**
+	 * Returns how the weights of the given layer are stored: densely if it has not been
+	 * pruned, and in sparse form if it has.
+	 */
+	private static int layerKind(Network network, int layer) {
+		return (network.sparseWeights[layer] == null) ? LAYER_DENSE : LAYER_PRUNED_SPARSE;
+	}
+	
 	private static void writeNumLayersToFile(FileOutputStream out, Network network) throws IOException {
 		
 		out.write(toBytes(network.numLayers()));
 		
 	}
 	
-	private static void writeActivationFunctionsToFile(FileOutputStream out, Network network) throws IOException {
+	private static void writeActivationFunctionsToFile(FileOutputStream out, ActivationFunction[] functions) throws IOException {
 		
 		var map = new HashMap<ActivationFunction, Integer>();
 		map.put(ActivationFunction.SIGMOID, 1);
@@ -113,8 +172,9 @@ public class NetworkFileUtils {
 		map.put(ActivationFunction.TANH, 4);
 		map.put(ActivationFunction.STEP, 5);
 		map.put(ActivationFunction.IDENTITY, 6);
+		map.put(ActivationFunction.SOFTMAX, 7);
 		
-		for(var af : network.functions) {
+		for(var af : functions) {
 			
 			out.write(toBytes(map.get(af)));
 			
@@ -122,9 +182,9 @@ public class NetworkFileUtils {
 		
 	}
 	
-	private static void writeLayerSizesToFile(FileOutputStream out, Network network) throws IOException {
+	private static void writeLayerSizesToFile(FileOutputStream out, int[] layerSizes) throws IOException {
 		
-		for(int layer : network.layerSizes) {
+		for(int layer : layerSizes) {
 			
 			out.write(toBytes(layer));
 			
@@ -136,16 +196,35 @@ public class NetworkFileUtils {
 		
 		for(int layer = 1; layer < network.layerSizes.length; layer++) {
 			
+			if(layerKind(network, layer - 1) == LAYER_PRUNED_SPARSE) {
+				writeSparseWeightsToFile(out, network.sparseWeights[layer - 1], network.precision);
+				continue;
+			}
+			
 			double[][] weights = network.weights[layer - 1].toArray();
 			
 			for(int r = 0; r < weights.length; r++) for(int c = 0; c < weights[0].length; c++) {
-				out.write(toBytes(weights[r][c]));
+				out.write(toBytes(weights[r][c], network.precision));
 			}
 			
 		}
 		
 	}
 	
+	/**
+	 * Writes the number of stored entries, then the row starts, column indices and values
+	 * of the given sparse matrix.
+	 */
+	private static void writeSparseWeightsToFile(FileOutputStream out, SparseMatrix weights, Precision precision) throws IOException {
+		
+		out.write(toBytes(weights.nonZeroCount()));
+		
+		for(int start : weights.getRowStarts()) out.write(toBytes(start));
+		for(int column : weights.getColumns()) out.write(toBytes(column));
+		for(double value : weights.getValues()) out.write(toBytes(value, precision));
+		
+	}
+	
 	private static void writeBiasesToFile(FileOutputStream out, Network network) throws IOException {
 		
 		for(int layer = 1; layer < network.layerSizes.length; layer++) {
@@ -153,13 +232,37 @@ public class NetworkFileUtils {
 			double[] biases = network.biases[layer - 1].toArray();
 			
 			for(int i = 0; i < biases.length; i++) {
-				out.write(toBytes(biases[i]));
+				out.write(toBytes(biases[i], network.precision));
 			}
 			
 		}
 		
 	}
 	
+	/**
+	 * Writes the trailing metadata section: a tag and a value for every setting that is not
+	 * part of the original save format. Files saved before a setting existed simply end
+	 * before its tag, and the setting's default is used when they are loaded.
+	 */
+	private static void writeMetadataToFile(FileOutputStream out, Network network) throws IOException {
+		
+		out.write(toBytes(METADATA_LOSS));
+		out.write(toBytes((network.loss == LossFunction.CROSS_ENTROPY) ? 2 : 1));
+		
+		var map = new HashMap<WeightInitialization, Integer>();
+		map.put(WeightInitialization.LEGACY_UNIFORM, 1);
+		map.put(WeightInitialization.XAVIER, 2);
+		map.put(WeightInitialization.HE, 3);
+		map.put(WeightInitialization.LECUN, 4);
+		map.put(WeightInitialization.ORTHOGONAL, 5);
+		
+		for(int i = 0; i < network.initializations.length; i++) {
+			out.write(toBytes(METADATA_INITIALIZATION + i));
+			out.write(toBytes(map.get(network.initializations[i])));
+		}
+		
+	}
+	
 	public static Optional<Network> loadNetworkFromFile(String fileName) { 
 		
 		File file = new File(fileName);
@@ -169,13 +272,56 @@ public class NetworkFileUtils {
 		try(FileInputStream in = new FileInputStream(file)) {
 			
 			String name = readNameFromFile(in);
+			
+			Precision precision = Precision.DOUBLE;
+			int[] layerKinds = null;
 			int numLayers = readNumLayersFromFile(in);
+			
+			if(numLayers == PRECISION_MARKER) {
+				
+				int precisionId = toInt(in.readNBytes(4));
+				
+				if(precisionId == PRECISION_FLOAT) precision = Precision.FLOAT;
+				else if(precisionId == PRECISION_MIXED) precision = Precision.MIXED;
+				else throw new IllegalArgumentException("Unknown precision.");
+				
+				numLayers = readNumLayersFromFile(in);
+				
+			}
+			
+			if(numLayers == PRUNING_MARKER) {
+				
+				layerKinds = new int[toInt(in.readNBytes(4))];
+				for(int i = 0; i < layerKinds.length; i++) layerKinds[i] = toInt(in.readNBytes(4));
+				
+				numLayers = readNumLayersFromFile(in);
+				
+				if(layerKinds.length != numLayers - 1)
+					throw new IllegalArgumentException("Pruning does not match the number of layers.");
+				
+			}
+			
 			ActivationFunction[] funcs = readActivationFunctionsFromFile(in, numLayers);
 			int[] layerSizes = readLayerSizesFromFile(in, numLayers);
-			Matrix[] weights = readWeightsFromFile(in, layerSizes);
-			Vector[] biases = readBiasesFromFile(in, layerSizes);
 			
-			network = new Network(name, layerSizes, funcs, weights, biases);
+			if(layerKinds == null) layerKinds = new int[numLayers - 1];
+			
+			SparseMatrix[] sparseWeights = new SparseMatrix[numLayers - 1];
+			Matrix[] weights = readWeightsFromFile(in, layerSizes, layerKinds, sparseWeights, precision);
+			Vector[] biases = readBiasesFromFile(in, layerSizes, precision);
+			HashMap<Integer, Integer> metadata = readMetadataFromFile(in);
+			
+			LossFunction loss = (metadata.getOrDefault(METADATA_LOSS, 1) == 2) 
+					? LossFunction.CROSS_ENTROPY : LossFunction.SQUARED_ERROR;
+			
+			WeightInitialization[] initializations = readInitializations(metadata, numLayers);
+			
+			network = new Network(name, layerSizes, funcs, weights, biases, loss, initializations);
+			network.setPrecision(precision);
+			
+			for(int i = 0; i < sparseWeights.length; i++) {
+				if(sparseWeights[i] != null) network.setPruningPattern(i, sparseWeights[i]);
+			}
 			
 		} catch(FileNotFoundException e) {
 			System.out.println("Could not find any such file.");
@@ -183,6 +329,115 @@ public class NetworkFileUtils {
 		} catch (IOException e) {
 			System.out.println("Something went wrong while attempting to read from file.");
 			return Optional.empty();
+		} catch (IllegalArgumentException e) {
+			System.out.println("Save file does not describe a valid network.");
+			return Optional.empty();
+		}
+		
+		return Optional.of(network);
+		
+	}
+	
+	/**
+	 * Saves a quantized network to .\\quantized\\name.q8, overwriting any earlier file of
+	 * that name. After the marker, version and name come the number of layers, the
+	 * activation functions and layer sizes as in a Network save file. Then, for each layer
+	 * after the first: the scale of its input activations, one weight scale and one bias
+	 * per neuron, all as floats, and finally its weights as one signed byte each, row by row.
+	 * @param network
+	 * @param name
+	 * @return whether the network was saved
+	 */
+	public static boolean saveQuantizedNetworkToFile(QuantizedNetwork network, String name) {
+		
+		File folder = new File(".\\quantized");
+		if(!folder.exists()) folder.mkdirs();
+		
+		try(FileOutputStream out = new FileOutputStream(quantizedFileFromName(name))) {
+			
+			out.write(toBytes(QUANTIZED_MARKER));
+			out.write(toBytes(QUANTIZED_VERSION));
+			writeNameToFile(out, (network.name != null) ? network.name : name);
+			out.write(toBytes(network.layerSizes.length));
+			writeActivationFunctionsToFile(out, network.functions);
+			writeLayerSizesToFile(out, network.layerSizes);
+			
+			for(int i = 0; i < network.weights.length; i++) {
+				
+				out.write(toBytes(Float.floatToIntBits(network.inputScales[i])));
+				for(float scale : network.weightScales[i]) out.write(toBytes(Float.floatToIntBits(scale)));
+				for(float bias : network.biases[i]) out.write(toBytes(Float.floatToIntBits(bias)));
+				out.write(network.weights[i]);
+				
+			}
+			
+		} catch (IOException e) {
+			System.out.println("Could not save the quantized network.");
+			System.out.println();
+			return false;
+		}
+		
+		return true;
+		
+	}
+	
+	/**
+	 * Returns the file a quantized network of the given name is saved to.
+	 * @param name
+	 * @return file
+	 */
+	public static File quantizedFileFromName(String name) {
+		return new File(".\\quantized\\" + name + ".q8");
+	}
+	
+	public static Optional<QuantizedNetwork> loadQuantizedNetworkFromFile(String fileName) {
+		
+		File file = new File(fileName);
+		
+		QuantizedNetwork network = null;
+		
+		try(FileInputStream in = new FileInputStream(file)) {
+			
+			if(toInt(in.readNBytes(4)) != QUANTIZED_MARKER || toInt(in.readNBytes(4)) != QUANTIZED_VERSION)
+				throw new IllegalArgumentException("Not a quantized network.");
+			
+			String name = readNameFromFile(in);
+			int numLayers = readNumLayersFromFile(in);
+			ActivationFunction[] funcs = readActivationFunctionsFromFile(in, numLayers);
+			int[] layerSizes = readLayerSizesFromFile(in, numLayers);
+			
+			byte[][] weights = new byte[numLayers - 1][];
+			float[][] weightScales = new float[numLayers - 1][];
+			float[] inputScales = new float[numLayers - 1];
+			float[][] biases = new float[numLayers - 1][];
+			
+			for(int i = 0; i < numLayers - 1; i++) {
+				
+				int rows = layerSizes[i+1];
+				
+				inputScales[i] = readFloat(in);
+				weightScales[i] = new float[rows];
+				for(int r = 0; r < rows; r++) weightScales[i][r] = readFloat(in);
+				biases[i] = new float[rows];
+				for(int r = 0; r < rows; r++) biases[i][r] = readFloat(in);
+				
+				weights[i] = in.readNBytes(rows * layerSizes[i]);
+				if(weights[i].length != rows * layerSizes[i])
+					throw new IllegalArgumentException("Quantized network file is truncated.");
+				
+			}
+			
+			network = new QuantizedNetwork(name, layerSizes, funcs, weights, weightScales, inputScales, biases);
+			
+		} catch(FileNotFoundException e) {
+			System.out.println("Could not find any such file.");
+			return Optional.empty();
+		} catch (IOException e) {
+			System.out.println("Something went wrong while attempting to read from file.");
+			return Optional.empty();
+		} catch (IllegalArgumentException e) {
+			System.out.println("File does not describe a valid quantized network.");
+			return Optional.empty();
 		}
 		
 		return Optional.of(network);
@@ -210,11 +465,16 @@ public class NetworkFileUtils {
 		map.put(4, ActivationFunction.TANH);
 		map.put(5, ActivationFunction.STEP);
 		map.put(6, ActivationFunction.IDENTITY);
+		map.put(7, ActivationFunction.SOFTMAX);
 		
 		ActivationFunction[] funcs = new ActivationFunction[numLayers];
 		
 		for(int i = 0; i < numLayers; i++) {
+			
 			funcs[i] = map.get(toInt(in.readNBytes(4)));
+			
+			if(funcs[i] == null) throw new IllegalArgumentException("Unknown activation function.");
+			
 		}
 		
 		return funcs;
@@ -233,29 +493,65 @@ public class NetworkFileUtils {
 		
 	}
 	
-	private static Matrix[] readWeightsFromFile(FileInputStream in, int[] layerSizes) throws IOException {
+	/**
+	 * Reads the weights of every layer, stored as given by layerKinds, and puts the sparse
+	 * copy of each pruned layer into sparseWeights.
+	 */
+	private static Matrix[] readWeightsFromFile(FileInputStream in, int[] layerSizes, int[] layerKinds, 
+			SparseMatrix[] sparseWeights, Precision precision) throws IOException {
 		
 		Matrix[] allWeights = new Matrix[layerSizes.length - 1];
 		
 		for(int layer = 0; layer < allWeights.length; layer++) {
 			
+			if(layerKinds[layer] == LAYER_PRUNED_SPARSE) {
+				sparseWeights[layer] = readSparseWeightsFromFile(in, layerSizes[layer+1], layerSizes[layer], precision);
+				allWeights[layer] = sparseWeights[layer].toMatrix();
+				continue;
+			}
+			
+			if(layerKinds[layer] != LAYER_DENSE && layerKinds[layer] != LAYER_PRUNED_DENSE)
+				throw new IllegalArgumentException("Unknown layer storage.");
+			
 			double[][] weights = new double[layerSizes[layer+1]][layerSizes[layer]];
 			
 			for(int r=0; r<weights.length; r++) for(int c=0; c<weights[0].length; c++) {
 				
-				weights[r][c] = toDouble(in.readNBytes(8));
+				weights[r][c] = readValue(in, precision);
 				
 			}
 			
 			allWeights[layer] = new Matrix(weights);
 			
+			//The pattern of a pruned layer stored densely is its nonzero weights
+			if(layerKinds[layer] == LAYER_PRUNED_DENSE) sparseWeights[layer] = new SparseMatrix(allWeights[layer]);
+			
 		}
 		
 		return allWeights;
 		
 	}
 	
-	private static Vector[] readBiasesFromFile(FileInputStream in, int[] layerSizes) throws IOException {
+	private static SparseMatrix readSparseWeightsFromFile(FileInputStream in, int rows, int cols, Precision precision) throws IOException {
+		
+		int nonZero = toInt(in.readNBytes(4));
+		
+		if(nonZero < 0 || nonZero > (long) rows * cols)
+			throw new IllegalArgumentException("Invalid number of stored weights.");
+		
+		int[] rowStarts = new int[rows + 1];
+		int[] columns = new int[nonZero];
+		double[] values = new double[nonZero];
+		
+		for(int i = 0; i < rowStarts.length; i++) rowStarts[i] = toInt(in.readNBytes(4));
+		for(int i = 0; i < nonZero; i++) columns[i] = toInt(in.readNBytes(4));
+		for(int i = 0; i < nonZero; i++) values[i] = readValue(in, precision);
+		
+		return new SparseMatrix(rows, cols, rowStarts, columns, values);
+		
+	}
+	
+	private static Vector[] readBiasesFromFile(FileInputStream in, int[] layerSizes, Precision precision) throws IOException {
 		
 		Vector[] allBiases = new Vector[layerSizes.length-1];
 		
@@ -264,7 +560,7 @@ public class NetworkFileUtils {
 			double[] biases = new double[layerSizes[layer + 1]];
 			
 			for(int i=0; i<biases.length; i++) {
-				biases[i] = toDouble(in.readNBytes(8));
+				biases[i] = readValue(in, precision);
 			}
 			
 			allBiases[layer] = new Vector(biases);
@@ -275,13 +571,77 @@ public class NetworkFileUtils {
 		
 	}
 	
+	/**
+	 * Reads tag and value pairs until the end of the file. Unknown tags, written by newer
+	 * versions of the program, are kept but ignored by the caller.
+	 */
+	private static HashMap<Integer, Integer> readMetadataFromFile(FileInputStream in) throws IOException {
+		
+		var metadata = new HashMap<Integer, Integer>();
+		
+		byte[] tag = in.readNBytes(4);
+		
+		while(tag.length == 4) {
+			
+			byte[] value = in.readNBytes(4);
+			if(value.length < 4) break;
+			
+			metadata.put(toInt(tag), toInt(value));
+			
+			tag = in.readNBytes(4);
+			
+		}
+		
+		return metadata;
+		
+	}
+	
+	/**
+	 * Returns the initialization scheme recorded for each layer. Files saved before schemes
+	 * were recorded were all initialized with the legacy uniform scheme.
+	 */
+	private static WeightInitialization[] readInitializations(HashMap<Integer, Integer> metadata, int numLayers) {
+		
+		var map = new HashMap<Integer, WeightInitialization>();
+		map.put(1, WeightInitialization.LEGACY_UNIFORM);
+		map.put(2, WeightInitialization.XAVIER);
+		map.put(3, WeightInitialization.HE);
+		map.put(4, WeightInitialization.LECUN);
+		map.put(5, WeightInitialization.ORTHOGONAL);
+		
+		WeightInitialization[] initializations = new WeightInitialization[numLayers - 1];
+		
+		for(int i = 0; i < initializations.length; i++) {
+			initializations[i] = map.getOrDefault(metadata.getOrDefault(METADATA_INITIALIZATION + i, 1), 
+					WeightInitialization.LEGACY_UNIFORM);
+		}
+		
+		return initializations;
+		
+	}
+	
+	/**
+	 * Reads one weight or bias, stored as an 8 byte double or a 4 byte float.
+	 */
+	private static double readValue(FileInputStream in, Precision precision) throws IOException {
+		
+		if(precision == Precision.FLOAT) return Float.intBitsToFloat(toInt(in.readNBytes(4)));
+		else return toDouble(in.readNBytes(8));
+		
+	}
+	
+	private static float readFloat(FileInputStream in) throws IOException {
+		
+		return Float.intBitsToFloat(toInt(in.readNBytes(4)));
+		
+	}
+	
 	private static byte[] toBytes(int integer) {
 		
 		byte[] bytes = new byte[4];
-		int index = 3;
 		
-		while(integer > 0) {
-			bytes[index--] = (byte)(integer & 0xFF);
+		for(int index = 3; index >= 0; index--) {
+			bytes[index] = (byte)(integer & 0xFF);
 			integer >>>= 8;
 		}
 		
@@ -289,6 +649,16 @@ public class NetworkFileUtils {
 		
 	}
 	
+	/**
+	 * Converts a weight or bias to the bytes it is saved as in the given precision.
+	 */
+	private static byte[] toBytes(double value, Precision precision) {
+		
+		if(precision == Precision.FLOAT) return toBytes(Float.floatToIntBits((float) value));
+		else return toBytes(value);
+		
+	}
+	
 	private static byte[] toBytes(double _double) {
 		
 		long longRepresentation = Double.doubleToLongBits(_double);
@@ -313,7 +683,7 @@ public class NetworkFileUtils {
 		
 		for(byte b : bytes) {
 			x <<= 8;
-			x |= b;
+			x |= (b & 0xFF);
 		}
 		
 		return x;
@@ -0,0 +1,291 @@
+package network;
+
+import java.util.Arrays;
+
+import linearAlgebra.Blas;
+
+/**
+ * Turns the gradients summed in a GradientAccumulator into an update of a network's
+ * weights and biases. Optimizers with per-parameter state, such as a velocity or a running
+ * average of squared gradients, allocate it once at construction, with one buffer for every
+ * weight matrix and bias vector of the network. Each parameter array is then updated by a
+ * single pass that reads the gradient, updates the state and writes the parameter together.
+ * 
+ * An optimizer belongs to the network it was created for and must not be shared between
+ * networks, or between trainers running at the same time.
+ * @author sbush
+ *
+ */
+public abstract class Optimizer {
+
+	private final int[] layerSizes;
+	
+	private Optimizer(int[] layerSizes) {
+		this.layerSizes = layerSizes.clone();
+	}
+	
+	/**
+	 * Plain stochastic gradient descent, with no state.
+	 * @param network
+	 * @return optimizer
+	 */
+	public static Optimizer sgd(Network network) {
+		return new SGD(network.layerSizes);
+	}
+	
+	/**
+	 * Stochastic gradient descent with classical momentum.
+	 * @param network
+	 * @param momentum fraction of the previous step carried into the next, typically 0.9
+	 * @return optimizer
+	 */
+	public static Optimizer momentum(Network network, double momentum) {
+		return new Momentum(network.layerSizes, momentum, false);
+	}
+	
+	/**
+	 * Stochastic gradient descent with Nesterov momentum, which applies the gradient as if
+	 * it had been measured after the momentum step.
+	 * @param network
+	 * @param momentum fraction of the previous step carried into the next, typically 0.9
+	 * @return optimizer
+	 */
+	public static Optimizer nesterov(Network network, double momentum) {
+		return new Momentum(network.layerSizes, momentum, true);
+	}
+	
+	/**
+	 * RMSProp, which divides each parameter's step by a running average of the magnitude
+	 * of its recent gradients.
+	 * @param network
+	 * @param decay weight of the old average in each new one, typically 0.9
+	 * @return optimizer
+	 */
+	public static Optimizer rmsProp(Network network, double decay) {
+		return new RMSProp(network.layerSizes, decay);
+	}
+	
+	/**
+	 * Adam, which combines momentum with RMSProp's per-parameter scaling and corrects both
+	 * running averages for their zero initialization.
+	 * @param network
+	 * @param beta1 decay of the average gradient, typically 0.9
+	 * @param beta2 decay of the average squared gradient, typically 0.999
+	 * @return optimizer
+	 */
+	public static Optimizer adam(Network network, double beta1, double beta2) {
+		return new Adam(network.layerSizes, beta1, beta2);
+	}
+	
+	/**
+	 * Updates the weights and biases of the network in place from the gradients summed in
+	 * the accumulator, averaged over the number of examples it holds.
+	 * @param network
+	 * @param gradient
+	 * @param learningRate
+	 */
+	public final void step(Network network, GradientAccumulator gradient, double learningRate) {
+		
+		if(!Arrays.equals(layerSizes, network.layerSizes))
+			throw new IllegalArgumentException("Optimizer was not created for this network.");
+		
+		if(gradient.count() == 0) return;
+		
+		double scale = 1.0 / gradient.count();
+		
+		beginStep();
+		
+		for(int i = 0; i < layerSizes.length - 1; i++) {
+			update(2 * i, network.weights[i].getData(), gradient.weights()[i].getData(), scale, learningRate);
+			update(2 * i + 1, network.biases[i].getData(), gradient.biases()[i].getData(), scale, learningRate);
+		}
+		
+		network.applyPruningMask();
+		
+	}
+	
+	/**
+	 * Called once at the start of every step, before any parameters are updated.
+	 */
+	void beginStep() {}
+	
+	/**
+	 * Updates one weight matrix or bias vector. Parameter arrays are numbered in the order
+	 * weights, biases of the first layer, then weights, biases of the next, and so on.
+	 * @param index number of the parameter array
+	 * @param params entries of the parameter array
+	 * @param gradient summed gradient of the parameter array
+	 * @param scale factor turning the summed gradient into the average gradient
+	 * @param learningRate
+	 */
+	abstract void update(int index, double[] params, double[] gradient, double scale, double learningRate);
+	
+	/**
+	 * Allocates one zeroed state buffer for every parameter array, in the order used by
+	 * update().
+	 * @return state buffers
+	 */
+	double[][] newState() {
+		
+		double[][] state = new double[2 * (layerSizes.length - 1)][];
+		
+		for(int i = 0; i < layerSizes.length - 1; i++) {
+			state[2 * i] = new double[layerSizes[i+1] * layerSizes[i]];
+			state[2 * i + 1] = new double[layerSizes[i+1]];
+		}
+		
+		return state;
+		
+	}
+	
+	private static final class SGD extends Optimizer {
+		
+		private SGD(int[] layerSizes) {
+			super(layerSizes);
+		}
+		
+		@Override
+		void update(int index, double[] params, double[] gradient, double scale, double learningRate) {
+			Blas.axpy(params.length, -learningRate * scale, gradient, 0, params, 0);
+		}
+		
+		@Override
+		public String toString() {
+			return "SGD";
+		}
+		
+	}
+	
+	private static final class Momentum extends Optimizer {
+		
+		private final double momentum;
+		private final boolean nesterov;
+		private final double[][] velocity;
+		
+		private Momentum(int[] layerSizes, double momentum, boolean nesterov) {
+			super(layerSizes);
+			this.momentum = momentum;
+			this.nesterov = nesterov;
+			this.velocity = newState();
+		}
+		
+		@Override
+		void update(int index, double[] params, double[] gradient, double scale, double learningRate) {
+			
+			double[] v = velocity[index];
+			
+			if(nesterov) {
+				for(int i = 0; i < params.length; i++) {
+					double g = gradient[i] * scale;
+					double vi = momentum * v[i] + g;
+					v[i] = vi;
+					params[i] -= learningRate * (g + momentum * vi);
+				}
+			} else {
+				for(int i = 0; i < params.length; i++) {
+					double vi = momentum * v[i] + gradient[i] * scale;
+					v[i] = vi;
+					params[i] -= learningRate * vi;
+				}
+			}
+			
+		}
+		
+		@Override
+		public String toString() {
+			return nesterov ? "Nesterov" : "Momentum";
+		}
+		
+	}
+	
+	private static final class RMSProp extends Optimizer {
+		
+		private static final double EPSILON = 1e-8;
+		
+		private final double decay;
+		private final double[][] meanSquare;
+		
+		private RMSProp(int[] layerSizes, double decay) {
+			super(layerSizes);
+			this.decay = decay;
+			this.meanSquare = newState();
+		}
+		
+		@Override
+		void update(int index, double[] params, double[] gradient, double scale, double learningRate) {
+			
+			double[] s = meanSquare[index];
+			
+			for(int i = 0; i < params.length; i++) {
+				double g = gradient[i] * scale;
+				double si = decay * s[i] + (1 - decay) * g * g;
+				s[i] = si;
+				params[i] -= learningRate * g / (Math.sqrt(si) + EPSILON);
+			}
+			
+		}
+		
+		@Override
+		public String toString() {
+			return "RMSProp";
+		}
+		
+	}
+	
+	private static final class Adam extends Optimizer {
+		
+		private static final double EPSILON = 1e-8;
+		
+		private final double beta1;
+		private final double beta2;
+		private final double[][] mean;
+		private final double[][] meanSquare;
+		
+		private long steps = 0;
+		private double correction1;
+		private double correction2;
+		
+		private Adam(int[] layerSizes, double beta1, double beta2) {
+			super(layerSizes);
+			this.beta1 = beta1;
+			this.beta2 = beta2;
+			this.mean = newState();
+			this.meanSquare = newState();
+		}
+		
+		@Override
+		void beginStep() {
+			steps++;
+			correction1 = 1 - Math.pow(beta1, steps);
+			correction2 = 1 - Math.pow(beta2, steps);
+		}
+		
+		@Override
+		void update(int index, double[] params, double[] gradient, double scale, double learningRate) {
+			
+			double[] m = mean[index];
+			double[] v = meanSquare[index];
+			
+			//Bias corrections folded into the step size: lr * sqrt(1 - beta2^t) / (1 - beta1^t)
+			double stepSize = learningRate * Math.sqrt(correction2) / correction1;
+			double epsilon = EPSILON * Math.sqrt(correction2);
+			
+			for(int i = 0; i < params.length; i++) {
+				double g = gradient[i] * scale;
+				double mi = beta1 * m[i] + (1 - beta1) * g;
+				double vi = beta2 * v[i] + (1 - beta2) * g * g;
+				m[i] = mi;
+				v[i] = vi;
+				params[i] -= stepSize * mi / (Math.sqrt(vi) + epsilon);
+			}
+			
+		}
+		
+		@Override
+		public String toString() {
+			return "Adam";
+		}
+		
+	}
+	
+}
@@ -0,0 +1,186 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import linearAlgebra.Matrix;
+import linearAlgebra.Vector;
+
+/**
+ * Trains a network on minibatches split across a fixed pool of worker threads. Each
+ * worker runs forwardprop() and backprop() on its share of the batch through its own
+ * TrainingWorkspace and adds the gradients straight into its own GradientAccumulator.
+ * The accumulators are then combined with a pairwise tree reduction, and the network is
+ * updated once per batch. The result matches serial training up to the order in which
+ * gradients are summed.
+ * @author sbush
+ *
+ */
+public class ParallelTrainer implements AutoCloseable {
+
+	private final Network network;
+	private final int numThreads;
+	private final ExecutorService pool;
+	private final Optimizer optimizer;
+	private final GradientAccumulator[] accumulators;
+	
+	//Per worker buffers, reused across batches so that training does not allocate
+	private final TrainingWorkspace[] workspaces;
+	private final Vector[] inputBuffers;
+	private final Vector[] desiredBuffers;
+	
+	/**
+	 * Constructs a trainer for the given network using the given number of worker threads
+	 * and plain stochastic gradient descent.
+	 * @param network
+	 * @param numThreads
+	 */
+	public ParallelTrainer(Network network, int numThreads) {
+		this(network, numThreads, Optimizer.sgd(network));
+	}
+	
+	/**
+	 * Constructs a trainer for the given network using the given number of worker threads,
+	 * which applies each batch's gradients with the given optimizer.
+	 * @param network
+	 * @param numThreads
+	 * @param optimizer
+	 */
+	public ParallelTrainer(Network network, int numThreads, Optimizer optimizer) {
+		
+		if(numThreads < 1)
+			throw new IllegalArgumentException("At least one worker thread is required.");
+		
+		this.network = network;
+		this.numThreads = numThreads;
+		this.optimizer = optimizer;
+		
+		this.pool = Executors.newFixedThreadPool(numThreads, (runnable) -> {
+			Thread thread = new Thread(runnable, "training-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		this.accumulators = new GradientAccumulator[numThreads];
+		for(int i = 0; i < numThreads; i++) accumulators[i] = new GradientAccumulator(network);
+		
+		int outputSize = network.layerSizes[network.numLayers() - 1];
+		
+		this.workspaces = new TrainingWorkspace[numThreads];
+		this.inputBuffers = new Vector[numThreads];
+		this.desiredBuffers = new Vector[numThreads];
+		
+		for(int i = 0; i < numThreads; i++) {
+			workspaces[i] = new TrainingWorkspace(network);
+			inputBuffers[i] = new Vector(network.layerSizes[0]);
+			desiredBuffers[i] = new Vector(outputSize);
+		}
+		
+	}
+	
+	/**
+	 * Computes the gradients of every example in the batch in parallel and applies their
+	 * average to the network through the optimizer with the given learning rate. Each
+	 * column of inputs and desiredOutputs is one example.
+	 * @param inputs
+	 * @param desiredOutputs
+	 * @param learningRate
+	 */
+	public void trainBatch(Matrix inputs, Matrix desiredOutputs, double learningRate) {
+		
+		if(inputs.getColCount() != desiredOutputs.getColCount())
+			throw new IllegalArgumentException("Every input must have a desired output.");
+		
+		int batchSize = inputs.getColCount();
+		
+		List<Callable<Void>> tasks = new ArrayList<>(numThreads);
+		
+		for(int t = 0; t < numThreads; t++) {
+			
+			final GradientAccumulator accumulator = accumulators[t];
+			final int start = (int) ((long) batchSize * t / numThreads);
+			final int end = (int) ((long) batchSize * (t + 1) / numThreads);
+			
+			final TrainingWorkspace workspace = workspaces[t];
+			final Vector input = inputBuffers[t];
+			final Vector desiredOutput = desiredBuffers[t];
+			
+			tasks.add(() -> {
+				accumulator.clear();
+				for(int i = start; i < end; i++) {
+					inputs.copyColInto(i, input);
+					desiredOutputs.copyColInto(i, desiredOutput);
+					network.forwardprop(input, workspace);
+					network.backprop(workspace, desiredOutput, accumulator);
+				}
+				return null;
+			});
+			
+		}
+		
+		runAll(tasks);
+		
+		reduce();
+		
+		optimizer.step(network, accumulators[0], learningRate);
+		
+	}
+	
+	/**
+	 * Sums every accumulator into accumulators[0]. Each round adds the accumulator
+	 * stride places to the right into each remaining one, in parallel, halving the
+	 * number of partial sums until only one is left.
+	 */
+	private void reduce() {
+		
+		for(int stride = 1; stride < numThreads; stride *= 2) {
+			
+			List<Callable<Void>> tasks = new ArrayList<>();
+			
+			for(int i = 0; i + stride < numThreads; i += 2 * stride) {
+				
+				final GradientAccumulator target = accumulators[i];
+				final GradientAccumulator source = accumulators[i + stride];
+				
+				tasks.add(() -> {
+					target.accumulate(source);
+					return null;
+				});
+				
+			}
+			
+			runAll(tasks);
+			
+		}
+		
+	}
+	
+	private void runAll(List<Callable<Void>> tasks) {
+		
+		try {
+			
+			for(Future<Void> future : pool.invokeAll(tasks)) future.get();
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Training was interrupted.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("A training worker failed.", e.getCause());
+		}
+		
+	}
+	
+	/**
+	 * Shuts down the worker threads.
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+	
+}
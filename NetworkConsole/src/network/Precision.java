@@ -0,0 +1,38 @@
+package network;
+
+/**
+ * The floating point format a network's weights are stored and trained in.
+ * @author sbush
+ *
+ */
+public enum Precision {
+
+	/**
+	 * 64-bit doubles, the original format.
+	 */
+	DOUBLE,
+	
+	/**
+	 * 32-bit floats. Weights, activations and gradients are all kept in single precision,
+	 * halving memory traffic and the size of save files.
+	 */
+	FLOAT,
+	
+	/**
+	 * Mixed precision. The master weights are kept as doubles, and every optimizer update
+	 * and reduction, from dot products to the gradient sums over a batch, is accumulated in
+	 * double. The forward and backward passes read float copies of the weights and store
+	 * activations and per-example errors as floats.
+	 */
+	MIXED;
+	
+	@Override
+	public String toString() {
+		
+		if(this == DOUBLE) return "Double (64-bit)";
+		else if(this == FLOAT) return "Float (32-bit)";
+		else return "Mixed (32-bit storage, 64-bit accumulation)";
+		
+	}
+	
+}
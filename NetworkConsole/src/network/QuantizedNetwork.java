@@ -0,0 +1,393 @@
+package network;
+
+import linearAlgebra.Blas;
+import linearAlgebra.Matrix;
+
+/**
+ * An inference only copy of a trained network with 8 bit integer weights, built by
+ * quantize(). Each row of each weight matrix is stored as signed bytes together with one
+ * scale, chosen so that the row's largest weight maps to 127. The activations fed into
+ * each layer are quantized the same way with one scale per layer, calibrated on a sample
+ * of training examples run through the original network.
+ *
+ * A layer is computed as an integer matrix-vector product accumulated exactly in ints,
+ * which is then scaled back to real values, offset by the biases and passed through the
+ * layer's activation function in double precision. Biases are kept as floats, since
+ * there are few of them.
+ * @author sbush
+ *
+ */
+public class QuantizedNetwork implements Classifier {
+
+	//The largest magnitude of a quantized weight or activation. -128 is never used, so
+	//that the range is symmetric around zero
+	private static final int QUANTIZED_MAX = 127;
+	
+	//Number of calibration examples run through the original network at once
+	private static final int CALIBRATION_BATCH_SIZE = 256;
+	
+	final String name;
+	final int[] layerSizes;
+	final ActivationFunction[] functions;
+	final byte[][] weights;
+	final float[][] weightScales;
+	final float[] inputScales;
+	final float[][] biases;
+	
+	//Scale turning layer i's integer sums back into real values, one per neuron:
+	//inputScales[i] * weightScales[i][r]
+	private final double[][] outputScales;
+	
+	//Each thread's buffers for classify(), and for classifyBatch() at the last batch size it used
+	private final ThreadLocal<Buffers> exampleBuffers = ThreadLocal.withInitial(() -> new Buffers(1));
+	private final ThreadLocal<Buffers> batchBuffers = new ThreadLocal<>();
+	
+	/**
+	 * The buffers needed to run a batch of a given size through the network: the current
+	 * layer's real values, its quantized values, and the integer sums of the next layer.
+	 * Each holds one example per row, packed as tightly as the layer in it allows, and is
+	 * large enough for the widest layer. row holds a single example for activation
+	 * functions that are not element-wise.
+	 */
+	private final class Buffers {
+		
+		private final int batchSize;
+		private final double[] values;
+		private final byte[] quantized;
+		private final int[] sums;
+		private final double[] row;
+		
+		private Buffers(int batchSize) {
+			
+			int widest = 0;
+			for(int size : layerSizes) widest = Math.max(widest, size);
+			
+			this.batchSize = batchSize;
+			this.values = new double[batchSize * widest];
+			this.quantized = new byte[batchSize * widest];
+			this.sums = new int[batchSize * widest];
+			this.row = new double[widest];
+			
+		}
+		
+	}
+	
+	/**
+	 * Constructs a quantized network from its stored parts. weights[i] holds the weights
+	 * into layer i + 1 row by row, as layerSizes[i + 1] rows of layerSizes[i] bytes.
+	 * @param name
+	 * @param layerSizes
+	 * @param functions
+	 * @param weights
+	 * @param weightScales
+	 * @param inputScales
+	 * @param biases
+	 */
+	QuantizedNetwork(String name, int[] layerSizes, ActivationFunction[] functions, byte[][] weights,
+			float[][] weightScales, float[] inputScales, float[][] biases) {
+		
+		this.name = name;
+		this.layerSizes = layerSizes;
+		this.functions = functions;
+		this.weights = weights;
+		this.weightScales = weightScales;
+		this.inputScales = inputScales;
+		this.biases = biases;
+		
+		this.outputScales = new double[weights.length][];
+		
+		for(int i = 0; i < weights.length; i++) {
+			outputScales[i] = new double[layerSizes[i+1]];
+			for(int r = 0; r < outputScales[i].length; r++) outputScales[i][r] = (double) inputScales[i] * weightScales[i][r];
+		}
+		
+	}
+	
+	/**
+	 * Quantizes the weights of the given network to 8 bit integers, calibrating the scale
+	 * of each layer's activations on the examples of the given source at the given indices.
+	 * The network itself is left unchanged.
+	 * @param network
+	 * @param source
+	 * @param calibrationIndices
+	 * @return quantized network
+	 */
+	public static QuantizedNetwork quantize(Network network, ExampleSource source, int[] calibrationIndices) {
+		
+		if(calibrationIndices.length == 0)
+			throw new IllegalArgumentException("At least one calibration example is required.");
+		
+		int numLayers = network.numLayers();
+		
+		//Largest activation magnitude seen on every layer that feeds another
+		double[] maxActivations = new double[numLayers - 1];
+		double[] pixels = new double[ExampleSource.PIXELS];
+		
+		for(int first = 0; first < calibrationIndices.length; first += CALIBRATION_BATCH_SIZE) {
+			
+			int count = Math.min(CALIBRATION_BATCH_SIZE, calibrationIndices.length - first);
+			Matrix inputs = new Matrix(ExampleSource.PIXELS, count);
+			double[] inputData = inputs.getData();
+			
+			for(int example = 0; example < count; example++) {
+				source.readInput(calibrationIndices[first + example], pixels, 0);
+				for(int r = 0; r < pixels.length; r++) inputData[r * count + example] = pixels[r];
+			}
+			
+			BatchActivation activation = network.forwardpropBatch(inputs);
+			
+			for(int i = 0; i < maxActivations.length; i++) {
+				for(double value : activation.activations()[i].getData()) {
+					maxActivations[i] = Math.max(maxActivations[i], Math.abs(value));
+				}
+			}
+			
+		}
+		
+		byte[][] weights = new byte[numLayers - 1][];
+		float[][] weightScales = new float[numLayers - 1][];
+		float[] inputScales = new float[numLayers - 1];
+		float[][] biases = new float[numLayers - 1][];
+		
+		for(int i = 0; i < numLayers - 1; i++) {
+			
+			int rows = network.layerSizes[i+1];
+			int cols = network.layerSizes[i];
+			
+			Matrix w = network.weights[i];
+			double[] data = w.getData();
+			
+			weights[i] = new byte[rows * cols];
+			weightScales[i] = new float[rows];
+			biases[i] = new float[rows];
+			inputScales[i] = scaleFor(maxActivations[i]);
+			
+			for(int r = 0; r < rows; r++) {
+				
+				int rowStart = w.getOffset() + r * w.getStride();
+				
+				double maxWeight = 0;
+				for(int c = 0; c < cols; c++) maxWeight = Math.max(maxWeight, Math.abs(data[rowStart + c]));
+				
+				weightScales[i][r] = scaleFor(maxWeight);
+				quantize(data, rowStart, cols, weightScales[i][r], weights[i], r * cols);
+				
+				biases[i][r] = (float) network.biases[i].get(r);
+				
+			}
+			
+		}
+		
+		return new QuantizedNetwork(network.name, network.layerSizes(), network.activationFunctions(),
+				weights, weightScales, inputScales, biases);
+		
+	}
+	
+	/**
+	 * Returns the scale mapping the given largest magnitude to QUANTIZED_MAX. Values that
+	 * are all zero are given a scale of one, which still quantizes them to zero.
+	 */
+	private static float scaleFor(double maxMagnitude) {
+		return (maxMagnitude > 0) ? (float) (maxMagnitude / QUANTIZED_MAX) : 1f;
+	}
+	
+	/**
+	 * Writes the n values of src starting at srcOff, divided by the scale, rounded and
+	 * clamped to the quantized range, into dst starting at dstOff.
+	 */
+	private static void quantize(double[] src, int srcOff, int n, float scale, byte[] dst, int dstOff) {
+		
+		double inverse = 1.0 / scale;
+		
+		for(int i = 0; i < n; i++) {
+			long q = Math.round(src[srcOff + i] * inverse);
+			dst[dstOff + i] = (byte) Math.max(-QUANTIZED_MAX, Math.min(QUANTIZED_MAX, q));
+		}
+		
+	}
+	
+	/**
+	 * Returns the index of the output neuron with the largest activation for the given
+	 * input, which holds raw pixel values in the same form as the vectors passed to
+	 * Network.forwardprop(). Each layer is computed with an integer matrix-vector product.
+	 * @param input
+	 * @return index of the most activated output neuron
+	 */
+	public int classify(double[] input) {
+		
+		if(input.length < layerSizes[0])
+			throw new IllegalArgumentException("Input array must be of size " + layerSizes[0]);
+		
+		Buffers buffers = exampleBuffers.get();
+		System.arraycopy(input, 0, buffers.values, 0, layerSizes[0]);
+		
+		return classifyExample(buffers);
+		
+	}
+	
+	/**
+	 * Classifies the single example whose raw pixel values are held in the buffers, one
+	 * integer matrix-vector product per layer.
+	 */
+	private int classifyExample(Buffers buffers) {
+		
+		double[] values = buffers.values;
+		
+		prepareInputs(buffers);
+		
+		for(int i = 1; i < layerSizes.length; i++) {
+			
+			int previousSize = layerSizes[i-1];
+			
+			quantize(values, 0, previousSize, inputScales[i-1], buffers.quantized, 0);
+			Blas.gemv(layerSizes[i], previousSize, weights[i-1], 0, previousSize, buffers.quantized, 0, buffers.sums, 0);
+			
+			finishLayer(i, buffers);
+			
+		}
+		
+		return indexOfMax(values, 0);
+		
+	}
+	
+	/**
+	 * Classifies every column of inputs. Each layer is computed for the whole batch with an
+	 * integer matrix product, so every row of weights is loaded once per batch rather than
+	 * once per example. A batch of one example is run through classify()'s matrix-vector
+	 * path instead, which needs no transposes.
+	 * @param inputs
+	 * @param classes
+	 */
+	@Override
+	public void classifyBatch(Matrix inputs, int[] classes) {
+		
+		if(inputs.getRowCount() != layerSizes[0])
+			throw new IllegalArgumentException("Input matrix must have " + layerSizes[0] + " rows");
+		
+		int batchSize = inputs.getColCount();
+		
+		if(batchSize == 1) {
+			Buffers buffers = exampleBuffers.get();
+			System.arraycopy(inputs.getData(), 0, buffers.values, 0, layerSizes[0]);
+			classes[0] = classifyExample(buffers);
+			return;
+		}
+		
+		Buffers buffers = batchBuffers.get();
+		
+		if(buffers == null || buffers.batchSize != batchSize) {
+			buffers = new Buffers(batchSize);
+			batchBuffers.set(buffers);
+		}
+		
+		double[] raw = inputs.getData();
+		double[] values = buffers.values;
+		
+		for(int r = 0; r < layerSizes[0]; r++) for(int example = 0; example < batchSize; example++) {
+			values[example * layerSizes[0] + r] = raw[r * batchSize + example];
+		}
+		
+		prepareInputs(buffers);
+		
+		for(int i = 1; i < layerSizes.length; i++) {
+			
+			int previousSize = layerSizes[i-1];
+			
+			quantize(values, 0, batchSize * previousSize, inputScales[i-1], buffers.quantized, 0);
+			
+			//Sums^T = Q^T * W^T, one row of sums per example
+			Blas.gemmNT(batchSize, layerSizes[i], previousSize,
+					buffers.quantized, 0, previousSize,
+					weights[i-1], 0, previousSize,
+					buffers.sums, 0, layerSizes[i]);
+			
+			finishLayer(i, buffers);
+			
+		}
+		
+		for(int example = 0; example < batchSize; example++) classes[example] = indexOfMax(values, example * numClasses());
+		
+	}
+	
+	/**
+	 * Scales the raw pixel values held in the buffers to the range 0 - 1 and applies the
+	 * input layer's activation function to them.
+	 */
+	private void prepareInputs(Buffers buffers) {
+		
+		int length = buffers.batchSize * layerSizes[0];
+		
+		for(int i = 0; i < length; i++) buffers.values[i] /= 255.0;
+		
+		applyFunction(0, buffers);
+		
+	}
+	
+	/**
+	 * Turns the integer sums of the given layer back into real values, adds the biases and
+	 * applies the layer's activation function, leaving the result in the buffers' values.
+	 */
+	private void finishLayer(int layer, Buffers buffers) {
+		
+		int size = layerSizes[layer];
+		double[] scales = outputScales[layer-1];
+		float[] b = biases[layer-1];
+		
+		for(int example = 0; example < buffers.batchSize; example++) {
+			int first = example * size;
+			for(int r = 0; r < size; r++) buffers.values[first + r] = buffers.sums[first + r] * scales[r] + b[r];
+		}
+		
+		applyFunction(layer, buffers);
+		
+	}
+	
+	private void applyFunction(int layer, Buffers buffers) {
+		
+		int size = layerSizes[layer];
+		double[] values = buffers.values;
+		
+		if(functions[layer].isElementwise()) {
+			functions[layer].applyInPlace(values, values, buffers.batchSize * size);
+			return;
+		}
+		
+		for(int example = 0; example < buffers.batchSize; example++) {
+			System.arraycopy(values, example * size, buffers.row, 0, size);
+			functions[layer].applyInPlace(buffers.row, buffers.row, size);
+			System.arraycopy(buffers.row, 0, values, example * size, size);
+		}
+		
+	}
+	
+	private int indexOfMax(double[] values, int first) {
+		
+		int index = 0;
+		for(int i = 1; i < numClasses(); i++) if(values[first + i] > values[first + index]) index = i;
+		
+		return index;
+		
+	}
+	
+	@Override
+	public int numClasses() {
+		return layerSizes[layerSizes.length - 1];
+	}
+	
+	/**
+	 * Returns the number of neurons in each layer.
+	 * @return layer sizes
+	 */
+	public int[] layerSizes() {
+		return layerSizes.clone();
+	}
+	
+	/**
+	 * Returns the name of the network this was quantized from.
+	 * @return name
+	 */
+	public String name() {
+		return name;
+	}
+	
+}
@@ -0,0 +1,220 @@
+package network;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Drives a training session epoch by epoch. A random subset of the training examples can
+ * be held out for validation, and the network is scored on it at the end of every epoch.
+ * The controller then chooses the next epoch's learning rate from its schedule, keeps a
+ * copy of the weights from the epoch with the best validation accuracy, and says when
+ * training should stop because the validation accuracy has not improved for a number of
+ * epochs.
+ * 
+ * The trainer asks learningRate() before each epoch, trains on trainingIndices(), and then
+ * calls endEpoch(), stopping as soon as it returns false. At the end of the session
+ * restoreBest() puts the best weights back into the network.
+ * @author sbush
+ *
+ */
+public class TrainingController {
+
+	//Batch size used when scoring the validation set
+	private static final int VALIDATION_BATCH_SIZE = 64;
+	
+	private final Network network;
+	private final ExampleSource source;
+	private final int[] trainingIndices;
+	private final int[] validationIndices;
+	private final LearningRateSchedule schedule;
+	private final double baseLearningRate;
+	private final int numEpochs;
+	private final int patience;
+	
+	private Network best = null;
+	private double bestAccuracy = Double.NEGATIVE_INFINITY;
+	private int bestEpoch = -1;
+	
+	private int epoch = 0;
+	private int epochsWithoutImprovement = 0;
+	private double lastAccuracy = Double.NaN;
+	private boolean stoppedEarly = false;
+	
+	/**
+	 * Constructs a controller for a session of at most numEpochs epochs over the examples of
+	 * the given source. validationSize examples, picked at random with the given seed, are
+	 * held out for validation and never trained on. With a patience of zero, training never
+	 * stops early.
+	 * @param network
+	 * @param source
+	 * @param validationSize
+	 * @param schedule
+	 * @param baseLearningRate
+	 * @param numEpochs
+	 * @param patience number of epochs without improvement before training stops
+	 * @param seed
+	 */
+	public TrainingController(Network network, ExampleSource source, int validationSize, LearningRateSchedule schedule,
+			double baseLearningRate, int numEpochs, int patience, long seed) {
+		
+		if(validationSize < 0 || validationSize >= source.size())
+			throw new IllegalArgumentException("Validation set must leave at least one training example.");
+		
+		if(validationSize == 0 && schedule.needsValidation())
+			throw new IllegalArgumentException(schedule + " needs a validation set.");
+		
+		if(validationSize == 0 && patience > 0)
+			throw new IllegalArgumentException("Early stopping needs a validation set.");
+		
+		this.network = network;
+		this.source = source;
+		this.schedule = schedule;
+		this.baseLearningRate = baseLearningRate;
+		this.numEpochs = numEpochs;
+		this.patience = patience;
+		
+		int[] shuffled = new int[source.size()];
+		for(int i = 0; i < shuffled.length; i++) shuffled[i] = i;
+		
+		Random rand = new Random(seed);
+		for(int i = shuffled.length - 1; i >= 1; i--) {
+			int j = rand.nextInt(i+1);
+			int temp = shuffled[i];
+			shuffled[i] = shuffled[j];
+			shuffled[j] = temp;
+		}
+		
+		//Kept in dataset order so that both sets are read sequentially
+		this.validationIndices = Arrays.copyOfRange(shuffled, 0, validationSize);
+		this.trainingIndices = Arrays.copyOfRange(shuffled, validationSize, shuffled.length);
+		Arrays.sort(validationIndices);
+		Arrays.sort(trainingIndices);
+		
+	}
+	
+	/**
+	 * Returns the indices of the examples to train on.
+	 * @return training indices
+	 */
+	public int[] trainingIndices() {
+		return trainingIndices;
+	}
+	
+	/**
+	 * Returns true if examples have been held out for validation.
+	 * @return whether there is a validation set
+	 */
+	public boolean hasValidation() {
+		return validationIndices.length > 0;
+	}
+	
+	/**
+	 * Returns the zero-indexed number of the epoch currently being trained.
+	 * @return current epoch
+	 */
+	public int epoch() {
+		return epoch;
+	}
+	
+	/**
+	 * Returns the learning rate for the current epoch.
+	 * @return learning rate
+	 */
+	public double learningRate() {
+		return schedule.learningRate(baseLearningRate, epoch);
+	}
+	
+	/**
+	 * Finishes the current epoch: scores the network on the validation set, if there is
+	 * one, keeps a copy of its weights if they are the best so far, and moves on to the next
+	 * epoch. Returns false once the last epoch has been trained, or once the validation
+	 * accuracy has not improved for patience epochs in a row.
+	 * @return whether training should continue
+	 */
+	public boolean endEpoch() {
+		
+		epoch++;
+		
+		if(hasValidation()) {
+			
+			lastAccuracy = Evaluator.evaluate(network, source, validationIndices, 
+					Runtime.getRuntime().availableProcessors(), VALIDATION_BATCH_SIZE).accuracy();
+			
+			schedule.observe(lastAccuracy);
+			
+			if(lastAccuracy > bestAccuracy) {
+				
+				bestAccuracy = lastAccuracy;
+				bestEpoch = epoch;
+				epochsWithoutImprovement = 0;
+				
+				if(best == null) best = network.copy();
+				else best.copyParametersFrom(network);
+				
+			} else {
+				
+				epochsWithoutImprovement++;
+				
+				if(patience > 0 && epochsWithoutImprovement >= patience && epoch < numEpochs) {
+					stoppedEarly = true;
+					return false;
+				}
+				
+			}
+			
+		}
+		
+		return epoch < numEpochs;
+		
+	}
+	
+	/**
+	 * Copies the weights from the epoch with the best validation accuracy back into the
+	 * network. Returns false, leaving the network unchanged, if there is no validation set
+	 * or if the last epoch trained was already the best one.
+	 * @return whether earlier weights were restored
+	 */
+	public boolean restoreBest() {
+		
+		if(best == null || bestEpoch == epoch) return false;
+		
+		network.copyParametersFrom(best);
+		
+		return true;
+		
+	}
+	
+	/**
+	 * Returns the validation accuracy measured at the end of the last epoch, or NaN if
+	 * there is no validation set.
+	 * @return last validation accuracy
+	 */
+	public double lastValidationAccuracy() {
+		return lastAccuracy;
+	}
+	
+	/**
+	 * Returns the best validation accuracy seen so far.
+	 * @return best validation accuracy
+	 */
+	public double bestValidationAccuracy() {
+		return bestAccuracy;
+	}
+	
+	/**
+	 * Returns the one-indexed epoch after which the best validation accuracy was measured.
+	 * @return best epoch
+	 */
+	public int bestEpoch() {
+		return bestEpoch;
+	}
+	
+	/**
+	 * Returns true if training was stopped before the planned number of epochs.
+	 * @return whether training stopped early
+	 */
+	public boolean stoppedEarly() {
+		return stoppedEarly;
+	}
+	
+}
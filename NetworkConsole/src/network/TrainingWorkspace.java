@@ -0,0 +1,93 @@
+package network;
+
+import java.util.Arrays;
+
+import linearAlgebra.Vector;
+
+/**
+ * Every buffer needed to run one example forward and backward through a network, sized
+ * once from the network's layer sizes. Network.forwardprop() and Network.backprop() have
+ * overloads that write into a workspace instead of allocating, so a thread that keeps
+ * reusing the same workspace trains without any heap allocation. A workspace must only
+ * be used by one thread at a time.
+ * @author sbush
+ *
+ */
+public final class TrainingWorkspace {
+
+	final int[] layerSizes;
+	
+	//Per layer: activations, raw activations, and dE/dz
+	final Vector[] a;
+	final Vector[] z;
+	final Vector[] dz;
+	
+	//Per layer: the activation function's derivative
+	final Vector[] derivative;
+	
+	//Gradients of the weights and biases for the last example backpropagated, allocated
+	//on first use since trainers that add into a GradientAccumulator never need them
+	private DesiredNetworkUpdate gradient;
+	
+	/**
+	 * Constructs a workspace for networks with the given layer sizes.
+	 * @param layerSizes
+	 */
+	public TrainingWorkspace(int[] layerSizes) {
+		
+		int n = layerSizes.length;
+		
+		this.layerSizes = layerSizes.clone();
+		this.a = new Vector[n];
+		this.z = new Vector[n];
+		this.dz = new Vector[n];
+		this.derivative = new Vector[n];
+		
+		for(int i = 0; i < n; i++) {
+			a[i] = new Vector(layerSizes[i]);
+			z[i] = new Vector(layerSizes[i]);
+			dz[i] = new Vector(layerSizes[i]);
+			derivative[i] = new Vector(layerSizes[i]);
+		}
+		
+	}
+	
+	/**
+	 * Constructs a workspace sized for the given network.
+	 * @param network
+	 */
+	public TrainingWorkspace(Network network) {
+		this(network.layerSizes);
+	}
+	
+	/**
+	 * Returns the activations of the output layer from the last forward pass.
+	 * @return output
+	 */
+	public Vector output() {
+		return a[a.length - 1];
+	}
+	
+	/**
+	 * Returns the gradients computed by the last backward pass. The returned object is
+	 * owned by the workspace and is overwritten by the next one.
+	 * @return gradient
+	 */
+	public DesiredNetworkUpdate gradient() {
+		
+		if(gradient == null) gradient = DesiredNetworkUpdate.zero(layerSizes);
+		
+		return gradient;
+		
+	}
+	
+	/**
+	 * Returns true if this workspace fits a network with the given layer sizes.
+	 * @param layerSizes
+	 * @return whether the sizes match
+	 */
+	boolean fits(int[] layerSizes) {
+		return Arrays.equals(this.layerSizes, layerSizes);
+	}
+	
+}
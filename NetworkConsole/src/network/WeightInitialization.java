@@ -0,0 +1,192 @@
+package network;
+
+import java.util.Random;
+
+import linearAlgebra.Blas;
+import linearAlgebra.Matrix;
+import linearAlgebra.Vector;
+
+/**
+ * The scheme used to pick a layer's starting weights. Apart from LEGACY_UNIFORM, every
+ * scheme scales the weights by the layer's fan-in (and fan-out, for Xavier) so that the
+ * raw activations of wide layers start out with roughly unit variance, rather than
+ * saturating sigmoid and tanh neurons from the first example. These schemes start every
+ * bias at zero.
+ * @author sbush
+ *
+ */
+public enum WeightInitialization {
+
+	/**
+	 * The original scheme: weights uniform in [-2, 2] and biases uniform in [-1, 1], both
+	 * excluding [-0.1, 0.1], whatever the size of the layer.
+	 */
+	LEGACY_UNIFORM,
+	
+	/**
+	 * Xavier (Glorot) initialization: weights uniform in [-r, r] with
+	 * r = sqrt(6 / (fanIn + fanOut)). Suited to sigmoid, tanh and softmax layers.
+	 */
+	XAVIER,
+	
+	/**
+	 * He initialization: normally distributed weights with variance 2 / fanIn. Suited to
+	 * ReLU and leaky ReLU layers, which zero out about half of their inputs.
+	 */
+	HE,
+	
+	/**
+	 * LeCun initialization: normally distributed weights with variance 1 / fanIn.
+	 */
+	LECUN,
+	
+	/**
+	 * Orthogonal initialization: a random matrix whose rows, or columns if there are more
+	 * rows than columns, are orthonormal, so the layer preserves the length of its input.
+	 */
+	ORTHOGONAL;
+	
+	/**
+	 * Returns the recommended scheme for a layer with the given activation function.
+	 * @param function
+	 * @return initialization scheme
+	 */
+	public static WeightInitialization defaultFor(ActivationFunction function) {
+		
+		if(function == ActivationFunction.RELU || function == ActivationFunction.LEAKY_RELU) return HE;
+		
+		if(function == ActivationFunction.SIGMOID || function == ActivationFunction.TANH 
+				|| function == ActivationFunction.SOFTMAX) return XAVIER;
+		
+		return LECUN;
+		
+	}
+	
+	/**
+	 * Fills the weights and biases of one layer with random starting values. The weight
+	 * matrix has one row per neuron of the layer and one column per neuron of the layer
+	 * before it.
+	 * @param weights
+	 * @param biases
+	 * @param rand
+	 */
+	void initialize(Matrix weights, Vector biases, Random rand) {
+		
+		int fanOut = weights.getRowCount();
+		int fanIn = weights.getColCount();
+		double[] data = weights.getData();
+		
+		switch(this) {
+		
+		case LEGACY_UNIFORM:
+			for(int i = 0; i < data.length; i++) data[i] = uniformExcludingCenter(2, rand);
+			for(int i = 0; i < biases.size(); i++) biases.set(i, uniformExcludingCenter(1, rand));
+			return;
+		
+		case XAVIER:
+			double range = Math.sqrt(6.0 / (fanIn + fanOut));
+			for(int i = 0; i < data.length; i++) data[i] = range * (2 * rand.nextDouble() - 1);
+			break;
+		
+		case HE:
+			double heDeviation = Math.sqrt(2.0 / fanIn);
+			for(int i = 0; i < data.length; i++) data[i] = heDeviation * rand.nextGaussian();
+			break;
+		
+		case LECUN:
+			double lecunDeviation = Math.sqrt(1.0 / fanIn);
+			for(int i = 0; i < data.length; i++) data[i] = lecunDeviation * rand.nextGaussian();
+			break;
+		
+		case ORTHOGONAL:
+			orthogonal(data, fanOut, fanIn, rand);
+			break;
+			
+		}
+		
+		for(int i = 0; i < biases.size(); i++) biases.set(i, 0);
+		
+	}
+	
+	/**
+	 * Returns a random double uniform in [-bound, bound] but outside of [-0.1, 0.1].
+	 */
+	private static double uniformExcludingCenter(double bound, Random rand) {
+		
+		double value = 0;
+		
+		while(-0.1 <= value && value <= 0.1) {
+			value = 2 * bound * rand.nextDouble() - bound;
+		}
+		
+		return value;
+		
+	}
+	
+	/**
+	 * Fills the row-major rows by cols matrix in data with a random matrix whose rows are
+	 * orthonormal, or whose columns are if it has more rows than columns. Gaussian vectors
+	 * are orthonormalized one at a time with modified Gram-Schmidt.
+	 */
+	private static void orthogonal(double[] data, int rows, int cols, Random rand) {
+		
+		//Orthonormalize the shorter side's vectors, each stored contiguously in vectors
+		boolean byRows = rows <= cols;
+		int count = byRows ? rows : cols;
+		int length = byRows ? cols : rows;
+		double[] vectors = byRows ? data : new double[count * length];
+		
+		for(int v = 0; v < count; v++) {
+			
+			int offset = v * length;
+			double norm = 0;
+			
+			//Redraw in the rare case that a vector lies in the span of the previous ones
+			while(norm < 1e-8) {
+				
+				for(int i = 0; i < length; i++) vectors[offset + i] = rand.nextGaussian();
+				
+				for(int u = 0; u < v; u++) {
+					double projection = Blas.dot(length, vectors, u * length, vectors, offset);
+					Blas.axpy(length, -projection, vectors, u * length, vectors, offset);
+				}
+				
+				norm = Math.sqrt(Blas.dot(length, vectors, offset, vectors, offset));
+				
+			}
+			
+			Blas.scal(length, 1 / norm, vectors, offset);
+			
+		}
+		
+		if(!byRows) {
+			for(int c = 0; c < cols; c++) for(int r = 0; r < rows; r++) data[r * cols + c] = vectors[c * rows + r];
+		}
+		
+	}
+	
+	@Override
+	public String toString() {
+		
+		switch(this) {
+		
+		case LEGACY_UNIFORM:
+			return "Legacy Uniform";
+		
+		case XAVIER:
+			return "Xavier";
+		
+		case HE:
+			return "He";
+		
+		case LECUN:
+			return "LeCun";
+		
+		default:
+			return "Orthogonal";
+			
+		}
+		
+	}
+	
+}